@@ -0,0 +1,50 @@
+plugins {
+    id("java-library")
+    id("maven-publish")
+}
+
+group = "ru.kazantsev.nsmp"
+version = rootProject.version
+
+java {
+    withSourcesJar()
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+base {
+    archivesName.set("basic_api_connector-micrometer")
+}
+
+publishing {
+    publications {
+        create<MavenPublication>("maven") {
+            artifactId = "basic_api_connector-micrometer"
+            from(components["java"])
+        }
+    }
+    repositories {
+        maven {
+            name = "GitHubPackages"
+            url = uri("https://maven.pkg.github.com/exeki/nsmp.basic_api_connector")
+            credentials {
+                username = System.getenv("GITHUB_USERNAME")
+                password = System.getenv("GITHUB_TOKEN")
+            }
+        }
+    }
+}
+
+dependencies {
+    api(project(":"))
+    api("io.micrometer:micrometer-core:1.13.6")
+}
+
+repositories {
+    mavenCentral()
+}
+
+tasks.compileJava {
+    options.encoding = "UTF-8"
+}
@@ -0,0 +1,83 @@
+package ru.kazantsev.nsmp.basic_api_connector.micrometer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import ru.kazantsev.nsmp.basic_api_connector.http.TransferStats;
+import ru.kazantsev.nsmp.basic_api_connector.metrics.ConnectionPoolGauges;
+import ru.kazantsev.nsmp.basic_api_connector.metrics.MetricsListener;
+import ru.kazantsev.nsmp.basic_api_connector.metrics.RequestEvent;
+
+/**
+ * Передача метрик коннектора в Micrometer.
+ * Метрики: nsmp.requests (таймер с гистограммой, теги operation, status, outcome),
+ * nsmp.request.bytes и nsmp.response.bytes (объем по сети, тег operation),
+ * nsmp.pool.leased, nsmp.pool.available, nsmp.pool.pending, nsmp.pool.max (показатели пула соединений).
+ * Общие теги, например имя инсталляции, задаются в конструкторе
+ */
+public class MicrometerMetricsListener implements MetricsListener {
+
+    protected final MeterRegistry registry;
+    protected final Tags commonTags;
+
+    /**
+     * @param registry   реестр метрик
+     * @param commonTags теги всех метрик коннектора
+     */
+    public MicrometerMetricsListener(MeterRegistry registry, Tags commonTags) {
+        this.registry = registry;
+        this.commonTags = commonTags;
+    }
+
+    public MicrometerMetricsListener(MeterRegistry registry) {
+        this(registry, Tags.empty());
+    }
+
+    @Override
+    public void onRequest(RequestEvent event) {
+        Tags operationTags = commonTags.and("operation", event.getOperation());
+        Timer.builder("nsmp.requests")
+                .description("NSMP API request attempts")
+                .tags(operationTags)
+                .tag("status", String.valueOf(event.getStatus()))
+                .tag("outcome", event.isSuccess() ? "success" : "error")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(event.getDuration());
+        TransferStats stats = event.getTransferStats();
+        if (stats.getRequestWireBytes() > 0) {
+            DistributionSummary.builder("nsmp.request.bytes")
+                    .baseUnit("bytes")
+                    .tags(operationTags)
+                    .register(registry)
+                    .record(stats.getRequestWireBytes());
+        }
+        DistributionSummary.builder("nsmp.response.bytes")
+                .baseUnit("bytes")
+                .tags(operationTags)
+                .register(registry)
+                .record(stats.getResponseWireBytes());
+        if (!event.isSuccess()) {
+            Counter.builder("nsmp.errors")
+                    .tags(operationTags)
+                    .tag("status", String.valueOf(event.getStatus()))
+                    .register(registry)
+                    .increment();
+        }
+    }
+
+    /**
+     * Зарегистрировать показатели пула соединений.
+     * Gauge по умолчанию держит объект слабой ссылкой и после его сборки показывает NaN, поэтому ссылка сильная
+     */
+    @Override
+    public void bindConnectionPool(ConnectionPoolGauges pool) {
+        Gauge.builder("nsmp.pool.leased", pool, ConnectionPoolGauges::getLeased).tags(commonTags).strongReference(true).register(registry);
+        Gauge.builder("nsmp.pool.available", pool, ConnectionPoolGauges::getAvailable).tags(commonTags).strongReference(true).register(registry);
+        Gauge.builder("nsmp.pool.pending", pool, ConnectionPoolGauges::getPending).tags(commonTags).strongReference(true).register(registry);
+        Gauge.builder("nsmp.pool.max", pool, ConnectionPoolGauges::getMax).tags(commonTags).strongReference(true).register(registry);
+    }
+}
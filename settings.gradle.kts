@@ -1,2 +1,4 @@
 rootProject.name = "basic_api_connector"
 
+
+include("micrometer")
@@ -0,0 +1,79 @@
+package ru.kazantsev.nsmp.basic_api_connector;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Сравнение атрибутов объекта, полученного через get, с новыми значениями.
+ * Учитывает то, как объект приходит из NSMP и как атрибуты обычно передаются на редактирование:
+ * ссылка из ответа (Map с UUID) равна строке с тем же UUID, числа сравниваются по значению,
+ * наборы ссылок сравниваются без учета порядка
+ */
+public final class AttributeDiff {
+
+    protected static final String UUID_ATTR = "UUID";
+
+    private AttributeDiff() {
+    }
+
+    /**
+     * Получить атрибуты, значения которых отличаются от предыдущего состояния объекта.
+     * Атрибуты, которых нет в новых значениях, не считаются измененными
+     *
+     * @param previous предыдущее состояние объекта, например, результат get
+     * @param updated  новые значения атрибутов
+     * @return измененные атрибуты с новыми значениями, пустой Map если ничего не изменилось
+     */
+    public static Map<String, Object> changed(Map<String, Object> previous, Map<String, Object> updated) {
+        Map<String, Object> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : updated.entrySet()) {
+            String code = entry.getKey();
+            if (previous == null || !previous.containsKey(code) || !same(previous.get(code), entry.getValue())) {
+                changed.put(code, entry.getValue());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Сравнить значения атрибута
+     *
+     * @param previous значение из предыдущего состояния объекта
+     * @param updated  новое значение
+     * @return true если значения равны
+     */
+    public static boolean same(Object previous, Object updated) {
+        return Objects.equals(normalize(previous), normalize(updated));
+    }
+
+    /**
+     * Привести значение к виду, пригодному для сравнения через equals
+     */
+    protected static Object normalize(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            if (map.get(UUID_ATTR) != null) return map.get(UUID_ATTR).toString();
+            Map<Object, Object> normalized = new HashMap<>();
+            map.forEach((key, item) -> normalized.put(key, normalize(item)));
+            return normalized;
+        }
+        if (value instanceof Collection<?> collection) {
+            //мультимножество: порядок элементов не важен, количество повторов важно
+            Map<Object, Integer> counts = new HashMap<>();
+            for (Object item : collection) counts.merge(normalize(item), 1, Integer::sum);
+            return counts;
+        }
+        if (value instanceof Number number) {
+            try {
+                BigDecimal decimal = new BigDecimal(number.toString());
+                return decimal.signum() == 0 ? BigDecimal.ZERO : decimal.stripTrailingZeros();
+            } catch (NumberFormatException e) {
+                return number;
+            }
+        }
+        return value;
+    }
+}
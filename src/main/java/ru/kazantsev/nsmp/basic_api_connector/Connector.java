@@ -10,12 +10,14 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.apache.hc.client5.http.ConnectTimeoutException;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
 import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.entity.GzipCompressingEntity;
 import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
@@ -25,31 +27,78 @@ import org.apache.hc.client5.http.ssl.TrustAllStrategy;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.net.URIBuilder;
 import org.apache.hc.core5.ssl.SSLContexts;
 import org.apache.hc.core5.util.Timeout;
+import ru.kazantsev.nsmp.basic_api_connector.batch.BulkOperationResult;
+import ru.kazantsev.nsmp.basic_api_connector.batch.BulkScripts;
+import ru.kazantsev.nsmp.basic_api_connector.batch.CreateM2MMultipleResult;
+import ru.kazantsev.nsmp.basic_api_connector.batch.GetManyResult;
+import ru.kazantsev.nsmp.basic_api_connector.batch.ReferencePrefetcher;
+import ru.kazantsev.nsmp.basic_api_connector.cache.ObjectCache;
+import ru.kazantsev.nsmp.basic_api_connector.cache.RequestCoalescer;
 import ru.kazantsev.nsmp.basic_api_connector.dto.nsmp.FileDto;
 import ru.kazantsev.nsmp.basic_api_connector.dto.nsmp.ScriptChecksums;
 import ru.kazantsev.nsmp.basic_api_connector.dto.nsmp.ServiceTimeExclusionDto;
 import ru.kazantsev.nsmp.basic_api_connector.exception.BadResponseException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
 import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
 import ru.kazantsev.nsmp.basic_api_connector.exception.ResponseReadException;
+import ru.kazantsev.nsmp.basic_api_connector.http.CompressionStats;
+import ru.kazantsev.nsmp.basic_api_connector.http.CountingEntity;
+import ru.kazantsev.nsmp.basic_api_connector.http.DecodingResponseEntity;
+import ru.kazantsev.nsmp.basic_api_connector.http.TransferStats;
+import ru.kazantsev.nsmp.basic_api_connector.metainfo.MetainfoCache;
+import ru.kazantsev.nsmp.basic_api_connector.metrics.ConnectionPoolGauges;
+import ru.kazantsev.nsmp.basic_api_connector.metrics.InMemoryMetrics;
+import ru.kazantsev.nsmp.basic_api_connector.metrics.MetricsListener;
+import ru.kazantsev.nsmp.basic_api_connector.metrics.RequestEvent;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.AdaptiveTimeouts;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.Admission;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.Bulkheads;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.CancellationToken;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.CircuitBreaker;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.ConcurrencyLimiter;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.HedgingPolicy;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.OperationClass;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.PriorityScheduler;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.RequestContext;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.RetryPolicy;
 
 import javax.net.ssl.SSLContext;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Коннектор, имплементирующий методы базового API NSMP
@@ -61,21 +110,35 @@ public class Connector {
     protected static final String BASE_SMPSYNC_PATH = "/sd/services/smpsync";
 
     protected static final String DATE_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    protected static final String METAINFO_FILE_NAME = "metainfo.xml";
+    protected static final ContentType METAINFO_CONTENT_TYPE = ContentType.APPLICATION_XML.withCharset(StandardCharsets.UTF_8);
+    protected static final String ACCEPT_ENCODING = "gzip, deflate";
+    protected static final String GZIP_CONTENT_ENCODING = "gzip";
+    protected static final long CHUNK_RETRY_PAUSE_MS = 500;
+    protected static final int DEFAULT_BULK_CHUNK_SIZE = 500;
+    protected static final int DEFAULT_PREFETCH_PARALLELISM = 4;
     protected static final Logger logger = LoggerFactory.getLogger(Connector.class);
 
+    protected final String installationId;
     protected final String scheme;
     protected final String host;
     protected String accessKey;
     protected boolean ignoringSSL;
 
     public Connector(ConnectorParams params) throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
+        this.installationId = params.getInstallationId();
         this.host = params.getHost();
         this.accessKey = params.getAccessKey();
         this.scheme = params.getScheme();
         this.ignoringSSL = params.isIgnoringSSL();
-        HttpClientBuilder clientBuilder = HttpClients.custom();
-        if (params.isIgnoringSSL()) clientBuilder.setConnectionManager(getNoSslConnectionManager());
-        this.client = clientBuilder.build();
+        this.connectionManager = params.isIgnoringSSL()
+                ? getNoSslConnectionManager()
+                : PoolingHttpClientConnectionManagerBuilder.create().build();
+        this.client = HttpClients.custom()
+                //сжатие обрабатывается коннектором, чтобы считать переданные байты
+                .disableContentCompression()
+                .setConnectionManager(connectionManager)
+                .build();
         this.objectMapper = new ObjectMapper()
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
                 .setDateFormat(new SimpleDateFormat(DATE_PATTERN));
@@ -86,11 +149,126 @@ public class Connector {
      */
     protected final CloseableHttpClient client;
 
+    /**
+     * Пул соединений клиента
+     */
+    protected final PoolingHttpClientConnectionManager connectionManager;
+
+    /**
+     * Показатели пула соединений, один экземпляр на коннектор: получатели метрик могут держать его слабой ссылкой
+     */
+    protected final ConnectionPoolGauges connectionPoolGauges = new ConnectionPoolGauges() {
+        @Override
+        public int getLeased() {
+            return connectionManager.getTotalStats().getLeased();
+        }
+
+        @Override
+        public int getAvailable() {
+            return connectionManager.getTotalStats().getAvailable();
+        }
+
+        @Override
+        public int getPending() {
+            return connectionManager.getTotalStats().getPending();
+        }
+
+        @Override
+        public int getMax() {
+            return connectionManager.getTotalStats().getMax();
+        }
+    };
+
     /**
      * Используемый при общении маппер
      */
     protected ObjectMapper objectMapper;
 
+    /**
+     * Фабрика StAX reader'ов для потокового чтения xml
+     */
+    protected final XMLInputFactory xmlInputFactory = newXmlInputFactory();
+
+    /**
+     * Дисковый кеш метаинформации, null если не подключен
+     */
+    protected MetainfoCache metainfoCache;
+
+    /**
+     * Кеш ответов метода get, null если не подключен
+     */
+    protected ObjectCache objectCache;
+
+    /**
+     * Объединитель одинаковых одновременных запросов на чтение, null если не подключен
+     */
+    protected RequestCoalescer requestCoalescer;
+
+    /**
+     * Политика повтора запросов, null если не подключена
+     */
+    protected RetryPolicy retryPolicy;
+
+    /**
+     * Предохранитель запросов к инсталляции, null если не подключен
+     */
+    protected CircuitBreaker circuitBreaker;
+
+    /**
+     * Политика дублирования медленных запросов чтения, null если не подключена
+     */
+    protected HedgingPolicy hedgingPolicy;
+
+    /**
+     * Планировщик доступа к соединениям по приоритетам, null если не подключен
+     */
+    protected PriorityScheduler priorityScheduler;
+
+    /**
+     * Квоты одновременных запросов по классам операций, null если не подключены
+     */
+    protected Bulkheads bulkheads;
+
+    /**
+     * Адаптивный ограничитель одновременных запросов, null если не подключен
+     */
+    protected ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Предзагрузчик объектов по ссылкам для getWithPrefetch и findWithPrefetch, создается при первом использовании
+     */
+    protected ReferencePrefetcher referencePrefetcher;
+
+    /**
+     * Пул daemon-потоков для параллельной отправки частей массовых операций, создается при первом использовании
+     */
+    protected ExecutorService batchExecutor;
+
+    /**
+     * Адаптивные таймауты ответа по операциям, null если не подключены
+     */
+    protected AdaptiveTimeouts adaptiveTimeouts;
+
+    /**
+     * Получатель метрик запросов, null если не подключен
+     */
+    protected MetricsListener metricsListener;
+
+    /**
+     * Запрашивать ли сжатые ответы (Accept-Encoding: gzip, deflate)
+     */
+    protected boolean responseCompression = true;
+
+    /**
+     * Минимальный размер тела запроса в байтах, начиная с которого оно сжимается gzip, null - не сжимать
+     */
+    protected Long requestCompressionThreshold;
+
+    /**
+     * Накопительная статистика сжатия
+     */
+    protected final CompressionStats compressionStats = new CompressionStats();
+
     /**
      * Возвращает connection manager с отключенной проверкой сертификата и hostname verification
      *
@@ -141,6 +319,382 @@ public class Connector {
         this.objectMapper = mapper;
     }
 
+    /**
+     * Подключить дисковый кеш метаинформации.
+     * После подключения методы metainfo отдают закешированную копию, а uploadMetainfo сбрасывает ее
+     *
+     * @param metainfoCache кеш метаинформации, null - отключить кеш
+     */
+    @SuppressWarnings("unused")
+    public void setMetainfoCache(MetainfoCache metainfoCache) {
+        this.metainfoCache = metainfoCache;
+    }
+
+    /**
+     * Получить подключенный кеш метаинформации
+     *
+     * @return кеш метаинформации, null если не подключен
+     */
+    @SuppressWarnings("unused")
+    public MetainfoCache getMetainfoCache() {
+        return metainfoCache;
+    }
+
+    /**
+     * Подключить кеш ответов метода get.
+     * После подключения edit, editM2M, delete и addFile сбрасывают записи измененного объекта
+     *
+     * @param objectCache кеш объектов, null - отключить кеш
+     */
+    @SuppressWarnings("unused")
+    public void setObjectCache(ObjectCache objectCache) {
+        this.objectCache = objectCache;
+    }
+
+    /**
+     * Получить подключенный кеш объектов
+     *
+     * @return кеш объектов, null если не подключен
+     */
+    @SuppressWarnings("unused")
+    public ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
+    /**
+     * Подключить объединение одинаковых одновременных запросов get, find и metainfo:
+     * пока такой запрос выполняется, остальные вызовы с теми же параметрами дожидаются его результата.
+     * Каждый вызов get и find получает собственную копию объектов
+     *
+     * @param requestCoalescer объединитель запросов, null - отключить
+     */
+    @SuppressWarnings("unused")
+    public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * Получить подключенный объединитель запросов
+     *
+     * @return объединитель запросов, null если не подключен
+     */
+    @SuppressWarnings("unused")
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Сбросить записи объекта в кеше объектов, если он подключен
+     *
+     * @param objectUuid uuid измененного объекта
+     */
+    protected void invalidateObject(String objectUuid) {
+        if (objectCache != null) objectCache.invalidate(objectUuid);
+    }
+
+    /**
+     * Подключить политику повтора запросов.
+     * По умолчанию повторяются только get, find, version, metainfo и другие операции чтения,
+     * повтор изменяющих операций включается в самой политике
+     *
+     * @param retryPolicy политика повтора, null - не повторять (по умолчанию)
+     */
+    @SuppressWarnings("unused")
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Получить подключенную политику повтора
+     *
+     * @return политика повтора, null если не подключена
+     */
+    @SuppressWarnings("unused")
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Подключить предохранитель: пока инсталляция недоступна, запросы сразу завершаются CircuitOpenException,
+     * не дожидаясь таймаутов соединения и ответа, а также мест в квотах, ограничителе и планировщике.
+     * Каждый повтор по политике повтора учитывается как отдельный запрос
+     *
+     * @param circuitBreaker предохранитель, null - отключить (по умолчанию)
+     */
+    @SuppressWarnings("unused")
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Получить подключенный предохранитель
+     *
+     * @return предохранитель, null если не подключен
+     */
+    @SuppressWarnings("unused")
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Подключить адаптивное ограничение количества одновременных запросов.
+     * Ограничение подстраивается по времени ответа и признакам перегрузки, лишние запросы ждут в очереди
+     *
+     * @param concurrencyLimiter ограничитель, null - отключить (по умолчанию)
+     * @throws IllegalArgumentException если подключены квоты, а минимальное ограничение не больше суммы квот BULK и ADMIN
+     */
+    @SuppressWarnings("unused")
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        checkIsolation(bulkheads, concurrencyLimiter, priorityScheduler);
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Получить подключенный ограничитель одновременных запросов, текущее ограничение - {@link ConcurrencyLimiter#getLimit()}
+     *
+     * @return ограничитель, null если не подключен
+     */
+    @SuppressWarnings("unused")
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Подключить квоты одновременных запросов по классам операций.
+     * Пул соединений к инсталляции увеличивается до суммы квот,
+     * поэтому долгие запросы smpsync и exec не занимают соединения быстрых операций с объектами
+     *
+     * @param bulkheads квоты, null - отключить (по умолчанию)
+     * @throws IllegalArgumentException если минимальное ограничение подключенного ограничителя
+     *                                  или количество мест планировщика не больше суммы квот BULK и ADMIN
+     */
+    @SuppressWarnings("unused")
+    public void setBulkheads(Bulkheads bulkheads) {
+        checkIsolation(bulkheads, concurrencyLimiter, priorityScheduler);
+        if (bulkheads != null) ensurePoolCapacity(bulkheads.getTotalQuota());
+        this.bulkheads = bulkheads;
+    }
+
+    /**
+     * Подключить планировщик доступа к соединениям по приоритетам.
+     * Приоритет запросов задается через {@link RequestContext}, пул соединений к инсталляции
+     * увеличивается до количества мест планировщика, а места в квотах и ограничителе занимает сам планировщик,
+     * чтобы очередь была только в планировщике
+     *
+     * @param priorityScheduler планировщик, null - отключить (по умолчанию)
+     * @throws IllegalArgumentException если подключены квоты, а количество мест не больше суммы квот BULK и ADMIN
+     */
+    @SuppressWarnings("unused")
+    public void setPriorityScheduler(PriorityScheduler priorityScheduler) {
+        checkIsolation(bulkheads, concurrencyLimiter, priorityScheduler);
+        if (priorityScheduler != null) ensurePoolCapacity(priorityScheduler.getPermits());
+        this.priorityScheduler = priorityScheduler;
+    }
+
+    /**
+     * Получить подключенный планировщик по приоритетам
+     *
+     * @return планировщик, null если не подключен
+     */
+    @SuppressWarnings("unused")
+    public PriorityScheduler getPriorityScheduler() {
+        return priorityScheduler;
+    }
+
+    /**
+     * Проверить, что общие для всех классов операций ограничитель и планировщик оставляют места для INTERACTIVE,
+     * даже когда все квоты BULK и ADMIN заняты
+     *
+     * @throws IllegalArgumentException если ограничитель или планировщик могут быть целиком заняты тяжелыми операциями
+     */
+    protected static void checkIsolation(Bulkheads bulkheads, ConcurrencyLimiter limiter, PriorityScheduler scheduler) {
+        if (bulkheads == null) return;
+        int background = bulkheads.getBackgroundQuota();
+        if (limiter != null && limiter.getMinLimit() <= background) {
+            throw new IllegalArgumentException("Concurrency limiter minLimit " + limiter.getMinLimit()
+                    + " must be greater than BULK and ADMIN quotas " + background);
+        }
+        if (scheduler != null && scheduler.getPermits() <= background) {
+            throw new IllegalArgumentException("Priority scheduler permits " + scheduler.getPermits()
+                    + " must be greater than BULK and ADMIN quotas " + background);
+        }
+    }
+
+    /**
+     * Увеличить пул соединений к инсталляции, если в нем меньше соединений, чем нужно
+     *
+     * @param connections необходимое количество соединений к инсталляции
+     */
+    protected void ensurePoolCapacity(int connections) {
+        if (connectionManager.getDefaultMaxPerRoute() < connections) connectionManager.setDefaultMaxPerRoute(connections);
+        if (connectionManager.getMaxTotal() < connections) connectionManager.setMaxTotal(connections);
+    }
+
+    /**
+     * Получить подключенные квоты по классам операций
+     *
+     * @return квоты, null если не подключены
+     */
+    @SuppressWarnings("unused")
+    public Bulkheads getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * Подключить дублирование медленных запросов get и find.
+     * Если ответ не пришел за задержку политики, отправляется второй запрос, используется первый ответ
+     *
+     * @param hedgingPolicy политика дублирования, null - отключить (по умолчанию)
+     */
+    @SuppressWarnings("unused")
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * Получить подключенную политику дублирования
+     *
+     * @return политика дублирования, null если не подключена
+     */
+    @SuppressWarnings("unused")
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Установить предзагрузчик объектов по ссылкам для getWithPrefetch и findWithPrefetch,
+     * например, с пулом потоков приложения
+     *
+     * @param referencePrefetcher предзагрузчик, null - предзагрузчик по умолчанию
+     */
+    @SuppressWarnings("unused")
+    public synchronized void setReferencePrefetcher(ReferencePrefetcher referencePrefetcher) {
+        this.referencePrefetcher = referencePrefetcher;
+    }
+
+    /**
+     * Получить предзагрузчик объектов по ссылкам.
+     * По умолчанию создается один раз на коннектор с пулом из 4 daemon-потоков
+     *
+     * @return предзагрузчик
+     */
+    public synchronized ReferencePrefetcher getReferencePrefetcher() {
+        if (referencePrefetcher == null) referencePrefetcher = new ReferencePrefetcher(this, DEFAULT_PREFETCH_PARALLELISM);
+        return referencePrefetcher;
+    }
+
+    /**
+     * Получить пул потоков для параллельной отправки частей массовых операций.
+     * Потоки daemon, простаивающие потоки завершаются через минуту, количество одновременных частей ограничивает вызов
+     *
+     * @return пул потоков
+     */
+    protected synchronized ExecutorService getBatchExecutor() {
+        if (batchExecutor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            batchExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "nsmp-batch-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return batchExecutor;
+    }
+
+    /**
+     * Подключить адаптивные таймауты ответа по операциям.
+     * Запросы без явного readTimeout получают таймаут по наблюдаемому времени ответа своей операции
+     *
+     * @param adaptiveTimeouts адаптивные таймауты, null - отключить (по умолчанию)
+     */
+    @SuppressWarnings("unused")
+    public void setAdaptiveTimeouts(AdaptiveTimeouts adaptiveTimeouts) {
+        this.adaptiveTimeouts = adaptiveTimeouts;
+    }
+
+    /**
+     * Получить подключенные адаптивные таймауты
+     *
+     * @return адаптивные таймауты, null если не подключены
+     */
+    @SuppressWarnings("unused")
+    public AdaptiveTimeouts getAdaptiveTimeouts() {
+        return adaptiveTimeouts;
+    }
+
+    /**
+     * Подключить получатель метрик запросов, например {@link InMemoryMetrics}.
+     * Получатель вызывается после каждой попытки запроса и получает показатели пула соединений
+     *
+     * @param metricsListener получатель метрик, null - отключить (по умолчанию)
+     */
+    @SuppressWarnings("unused")
+    public void setMetricsListener(MetricsListener metricsListener) {
+        if (metricsListener != null) metricsListener.bindConnectionPool(getConnectionPoolGauges());
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Получить подключенный получатель метрик
+     *
+     * @return получатель метрик, null если не подключен
+     */
+    @SuppressWarnings("unused")
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Получить показатели пула соединений коннектора, значения читаются при каждом обращении.
+     * Возвращается один и тот же экземпляр, он живет, пока жив коннектор
+     *
+     * @return показатели пула соединений
+     */
+    public ConnectionPoolGauges getConnectionPoolGauges() {
+        return connectionPoolGauges;
+    }
+
+    /**
+     * Включить или отключить запрос сжатых ответов.
+     * Сжатый ответ распаковывается в любом случае, настройка влияет только на заголовок Accept-Encoding
+     *
+     * @param responseCompression true - запрашивать gzip/deflate (по умолчанию)
+     */
+    @SuppressWarnings("unused")
+    public void setResponseCompression(boolean responseCompression) {
+        this.responseCompression = responseCompression;
+    }
+
+    /**
+     * Установить порог сжатия тела запроса. Тела известного размера не меньше порога
+     * отправляются с Content-Encoding: gzip, поэтому сервер (или прокси перед ним) должен уметь их распаковывать
+     *
+     * @param requestCompressionThreshold порог в байтах, null - не сжимать (по умолчанию)
+     */
+    @SuppressWarnings("unused")
+    public void setRequestCompressionThreshold(Long requestCompressionThreshold) {
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    /**
+     * Получить накопительную статистику сжатия по методам API
+     *
+     * @return статистика сжатия
+     */
+    @SuppressWarnings("unused")
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    /**
+     * Получить пользовательский идентификатор инсталляции
+     *
+     * @return идентификатор инсталляции
+     */
+    public String getInstallationId() {
+        return installationId;
+    }
+
     /**
      * Получить хост
      *
@@ -150,6 +704,15 @@ public class Connector {
         return host;
     }
 
+    /**
+     * Получить схему (http/https)
+     *
+     * @return схема
+     */
+    public String getScheme() {
+        return scheme;
+    }
+
     /**
      * Собирает string entity подавляя потенциальное исключение
      *
@@ -157,13 +720,37 @@ public class Connector {
      * @return string entity
      */
     protected StringEntity newStringEntity(Object value) {
+        return new StringEntity(writeJson(value), ContentType.APPLICATION_JSON);
+    }
+
+    /**
+     * Сериализует значение в JSON подавляя потенциальное исключение
+     *
+     * @param value сериализуемое значение
+     * @return JSON строка
+     */
+    protected String writeJson(Object value) {
         try {
-            return new StringEntity(objectMapper.writeValueAsString(value), ContentType.APPLICATION_JSON);
+            return objectMapper.writeValueAsString(value);
         } catch (JsonProcessingException e) {
             throw new RequestProcessException(e);
         }
     }
 
+    /**
+     * Выполнить запрос через объединитель одинаковых запросов, если он подключен
+     *
+     * @param operation операция (PATH_SEGMENT) для сообщений об ошибках, ключ в них не попадает, так как содержит accessKey
+     * @param key       ключ запроса: метод, uri и тело
+     * @param supplier  выполнение запроса
+     * @param <T>       тип результата, должен быть неизменяемым (строка, массив байтов, который никто не меняет)
+     * @return результат запроса
+     */
+    protected <T> T coalesce(String operation, String key, Supplier<T> supplier) {
+        if (requestCoalescer == null) return supplier.get();
+        return requestCoalescer.execute(operation, key, supplier);
+    }
+
     /**
      * Выполнить POST
      *
@@ -178,7 +765,7 @@ public class Connector {
             String method,
             Function<ClassicHttpResponse, T> responseMapper
     ) {
-        return executePost(request, method, responseMapper, null);
+        return execute(request, method, responseMapper, null);
     }
 
     /**
@@ -197,20 +784,7 @@ public class Connector {
             Function<ClassicHttpResponse, T> responseMapper,
             Long readTimeout
     ) {
-        try {
-            if (readTimeout != null) {
-                RequestConfig requestConfig = RequestConfig.custom()
-                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
-                        .build();
-                request.setConfig(requestConfig);
-            }
-            logger.debug("POST request \"{}\" uri: \"{}\"", method, request);
-            HttpClientResponseHandler<T> handler = response -> handleResponse(method, response, responseMapper);
-            return client.execute(request, handler);
-        } catch (IOException e) {
-            throw new RequestProcessException(e);
-        }
-
+        return execute(request, method, responseMapper, readTimeout);
     }
 
     /**
@@ -227,7 +801,7 @@ public class Connector {
             String method,
             Function<ClassicHttpResponse, T> responseMapper
     ) {
-        return executeGet(request, method, responseMapper, null);
+        return execute(request, method, responseMapper, null);
     }
 
     /**
@@ -246,21 +820,375 @@ public class Connector {
             Function<ClassicHttpResponse, T> responseMapper,
             Long readTimeout
     ) {
+        return execute(request, method, responseMapper, readTimeout);
+    }
+
+    /**
+     * Выполнить запрос чтения с дублированием медленных запросов, если подключена политика дублирования
+     *
+     * @param requestFactory создание запроса, у каждого дубля свой экземпляр
+     * @param method         название метода для лога
+     * @param responseMapper маппер для преобразования ответа
+     * @param <T>            тип возвращаемых данных
+     * @return ответ, преобразованных responseMapper
+     */
+    protected <T> T executeHedged(
+            Supplier<? extends HttpUriRequestBase> requestFactory,
+            String method,
+            Function<ClassicHttpResponse, T> responseMapper
+    ) {
+        HedgingPolicy policy = hedgingPolicy;
+        if (policy == null || !policy.isHedged(method)) return execute(requestFactory.get(), method, responseMapper, null);
+        return policy.execute(method, requestFactory, request -> execute(request, method, responseMapper, null));
+    }
+
+    /**
+     * Выполнить запрос, повторяя его по политике повтора, если она подключена
+     *
+     * @param request        запрос
+     * @param method         название метода для лога
+     * @param responseMapper маппер для преобразования ответа
+     * @param readTimeout    read timeout, null - таймаут клиента
+     * @param <T>            тип возвращаемых данных
+     * @return ответ, преобразованных responseMapper
+     */
+    protected <T> T execute(
+            HttpUriRequestBase request,
+            String method,
+            Function<ClassicHttpResponse, T> responseMapper,
+            Long readTimeout
+    ) {
+        RequestContext context = RequestContext.current();
+        RetryPolicy policy = retryPolicy;
+        if (policy == null) {
+            context.check(method);
+            return executeGuarded(request, method, responseMapper, readTimeout);
+        }
+        for (int attempt = 1; ; attempt++) {
+            context.check(method);
+            try {
+                T result = executeGuarded(request, method, responseMapper, readTimeout);
+                policy.onSuccess();
+                return result;
+            } catch (RuntimeException e) {
+                HttpEntity entity = request.getEntity();
+                boolean repeatable = entity == null || entity.isRepeatable();
+                Duration delay = policy.retryDelay(method, repeatable, attempt, e, context);
+                if (delay == null) throw e;
+                logger.warn("{} attempt {} failed, retrying in {} ms: {}", method, attempt, delay.toMillis(), e.getMessage());
+                try {
+                    Thread.sleep(delay.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    e.addSuppressed(interrupted);
+                    throw e;
+                }
+                //reset снимает отметку отмены, поэтому отмененный во время паузы запрос не повторяется
+                if (request.isCancelled()) throw new RequestCancelledException();
+                request.reset();
+            }
+        }
+    }
+
+    /**
+     * Выполнить одну попытку запроса в квоте класса операции, если квоты подключены
+     *
+     * @param request        запрос
+     * @param method         название метода для лога
+     * @param responseMapper маппер для преобразования ответа
+     * @param readTimeout    read timeout, null - таймаут клиента
+     * @param <T>            тип возвращаемых данных
+     * @return ответ, преобразованных responseMapper
+     */
+    protected <T> T executeAttempt(
+            HttpUriRequestBase request,
+            String method,
+            Function<ClassicHttpResponse, T> responseMapper,
+            Long readTimeout
+    ) {
+        Bulkheads quotas = bulkheads;
+        if (quotas == null) return executeLimited(request, method, responseMapper, readTimeout);
+        OperationClass operationClass = quotas.acquire(method);
+        try {
+            return executeLimited(request, method, responseMapper, readTimeout);
+        } finally {
+            quotas.release(operationClass);
+        }
+    }
+
+    /**
+     * Выполнить одну попытку запроса через ограничитель одновременных запросов, если он подключен
+     *
+     * @param request        запрос
+     * @param method         название метода для лога
+     * @param responseMapper маппер для преобразования ответа
+     * @param readTimeout    read timeout, null - таймаут клиента
+     * @param <T>            тип возвращаемых данных
+     * @return ответ, преобразованных responseMapper
+     */
+    protected <T> T executeLimited(
+            HttpUriRequestBase request,
+            String method,
+            Function<ClassicHttpResponse, T> responseMapper,
+            Long readTimeout
+    ) {
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter == null) return executeOnce(request, method, responseMapper, readTimeout);
+        long started = limiter.acquire(method);
+        try {
+            T result = executeOnce(request, method, responseMapper, readTimeout);
+            limiter.onSuccess(method, started);
+            return result;
+        } catch (RuntimeException e) {
+            limiter.onError(method, started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Выполнить одну попытку запроса через предохранитель, если он подключен.
+     * Предохранитель проверяется до ожидания в квотах и очередях, поэтому при недоступной инсталляции запрос
+     * завершается сразу
+     *
+     * @param request        запрос
+     * @param method         название метода для лога
+     * @param responseMapper маппер для преобразования ответа
+     * @param readTimeout    read timeout, null - таймаут клиента
+     * @param <T>            тип возвращаемых данных
+     * @return ответ, преобразованных responseMapper
+     */
+    protected <T> T executeGuarded(
+            HttpUriRequestBase request,
+            String method,
+            Function<ClassicHttpResponse, T> responseMapper,
+            Long readTimeout
+    ) {
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker == null) return executeScheduled(request, method, responseMapper, readTimeout);
+        long permit = breaker.acquire();
+        try {
+            T result = executeScheduled(request, method, responseMapper, readTimeout);
+            breaker.onSuccess(permit);
+            return result;
+        } catch (RuntimeException e) {
+            breaker.onError(permit, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Выполнить одну попытку запроса, дождавшись очереди в планировщике по приоритетам, если он подключен.
+     * Планировщик занимает места запроса в квоте класса операции и ограничителе вместе с местом в своей очереди,
+     * без планировщика запрос ждет их по очереди в {@link #executeAttempt}
+     *
+     * @param request        запрос
+     * @param method         название метода для лога
+     * @param responseMapper маппер для преобразования ответа
+     * @param readTimeout    read timeout, null - таймаут клиента
+     * @param <T>            тип возвращаемых данных
+     * @return ответ, преобразованных responseMapper
+     */
+    protected <T> T executeScheduled(
+            HttpUriRequestBase request,
+            String method,
+            Function<ClassicHttpResponse, T> responseMapper,
+            Long readTimeout
+    ) {
+        PriorityScheduler scheduler = priorityScheduler;
+        if (scheduler == null) return executeAttempt(request, method, responseMapper, readTimeout);
+        Admission admission = new Admission(method, bulkheads, concurrencyLimiter);
+        scheduler.acquire(method, admission);
         try {
-            if (readTimeout != null) {
+            T result = executeOnce(request, method, responseMapper, readTimeout);
+            admission.onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            admission.onError(e);
+            throw e;
+        } finally {
+            scheduler.release();
+        }
+    }
+
+    /**
+     * Выполнить одну попытку запроса: выставить таймаут и заголовки сжатия, при необходимости сжать тело запроса,
+     * распаковать ответ и учесть объем переданных данных.
+     * Без явного readTimeout таймаут ответа берется из адаптивных таймаутов, если они подключены.
+     * Если в контексте запросов задан срок выполнения, таймаут ответа не больше оставшегося времени,
+     * если задан токен отмены, запрос регистрируется в нем на время выполнения
+     *
+     * @param request        запрос
+     * @param method         название метода для лога
+     * @param responseMapper маппер для преобразования ответа
+     * @param readTimeout    read timeout, null - таймаут клиента
+     * @param <T>            тип возвращаемых данных
+     * @return ответ, преобразованных responseMapper
+     */
+    protected <T> T executeOnce(
+            HttpUriRequestBase request,
+            String method,
+            Function<ClassicHttpResponse, T> responseMapper,
+            Long readTimeout
+    ) {
+        RequestContext context = RequestContext.current();
+        context.check(method);
+        CancellationToken cancellationToken = context.getCancellationToken();
+        TransferStats stats = new TransferStats(method);
+        AdaptiveTimeouts timeouts = adaptiveTimeouts;
+        //таймаут ответа взят из адаптивных таймаутов и не сокращен сроком выполнения
+        boolean adaptiveTimeout = readTimeout == null && timeouts != null;
+        if (adaptiveTimeout) readTimeout = timeouts.timeout(method).toMillis();
+        //таймаут ответа сокращен до оставшегося до срока времени
+        boolean deadlineTimeout = false;
+        HttpEntity requestEntity = null;
+        //тело запроса до сжатия и подсчета, восстанавливается для повторных попыток
+        HttpEntity sourceEntity = request.getEntity();
+        long started = System.nanoTime();
+        boolean success = false;
+        try {
+            Duration remaining = context.getRemaining();
+            if (remaining != null) {
+                //не меньше 1 мс: нулевой таймаут означает его отсутствие
+                long remainingMillis = Math.max(1, remaining.toMillis());
+                long timeout = readTimeout != null ? Math.min(readTimeout, remainingMillis) : remainingMillis;
+                deadlineTimeout = readTimeout == null || timeout < readTimeout;
+                if (deadlineTimeout) adaptiveTimeout = false;
+                RequestConfig requestConfig = RequestConfig.custom()
+                        .setResponseTimeout(Timeout.ofMilliseconds(timeout))
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(remainingMillis))
+                        .build();
+                request.setConfig(requestConfig);
+            } else if (readTimeout != null) {
                 RequestConfig requestConfig = RequestConfig.custom()
                         .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
                         .build();
                 request.setConfig(requestConfig);
             }
-            logger.debug("GET request \"{}\" uri: \"{}\"", method, request);
-            HttpClientResponseHandler<T> handler = response -> handleResponse(method, response, responseMapper);
-            return client.execute(request, handler);
+            if (responseCompression) request.setHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+            requestEntity = prepareRequestEntity(request, stats);
+            logger.debug("{} request \"{}\" uri: \"{}\"", request.getMethod(), method, request);
+            HttpClientResponseHandler<T> handler = response -> {
+                decodeResponse(response, stats);
+                return handleResponse(method, response, responseMapper);
+            };
+            if (cancellationToken != null) cancellationToken.register(request);
+            T result = send(request, handler);
+            if (timeouts != null) timeouts.record(method, Duration.ofNanos(System.nanoTime() - started));
+            success = true;
+            return result;
         } catch (IOException e) {
+            if (request.isCancelled()) throw new RequestCancelledException(e);
+            //ответ, не дождавшийся адаптивного таймаута, учитывается как время до таймаута, чтобы таймаут мог вырасти.
+            //Таймауты соединения и таймауты, сокращенные сроком выполнения, о времени ответа операции не говорят
+            if (adaptiveTimeout && e instanceof SocketTimeoutException && !(e instanceof ConnectTimeoutException)) {
+                timeouts.record(method, Duration.ofNanos(System.nanoTime() - started));
+            }
+            //ответ не дождался срока вызывающего, а не таймаута операции
+            if (deadlineTimeout && e instanceof SocketTimeoutException && !(e instanceof ConnectTimeoutException)) {
+                throw new DeadlineExceededException(method, e);
+            }
             throw new RequestProcessException(e);
+        } catch (ResponseReadException e) {
+            //отмена во время чтения тела ответа обрывает соединение, и чтение завершается ошибкой
+            if (request.isCancelled()) throw new RequestCancelledException(e);
+            throw e;
+        } finally {
+            if (cancellationToken != null) cancellationToken.unregister(request);
+            request.setEntity(sourceEntity);
+            completeTransfer(requestEntity, stats);
+            publishMetrics(new RequestEvent(stats, Duration.ofNanos(System.nanoTime() - started), success));
+        }
+    }
+
+    /**
+     * Отправить запрос клиентом
+     *
+     * @param request запрос
+     * @param handler обработчик ответа
+     * @param <T>     тип возвращаемых данных
+     * @return результат обработчика
+     */
+    protected <T> T send(HttpUriRequestBase request, HttpClientResponseHandler<T> handler) throws IOException {
+        return client.execute(request, handler);
+    }
+
+    /**
+     * Передать данные попытки запроса получателю метрик, ошибки получателя только пишутся в лог
+     *
+     * @param event данные попытки
+     */
+    protected void publishMetrics(RequestEvent event) {
+        MetricsListener listener = metricsListener;
+        if (listener == null) return;
+        try {
+            listener.onRequest(event);
+        } catch (RuntimeException e) {
+            logger.warn("Metrics listener failed for {}", event.getOperation(), e);
         }
     }
 
+    /**
+     * Сжать тело запроса, если его размер известен и не меньше порога сжатия.
+     * Сжатое тело оборачивается в {@link CountingEntity}, чтобы учесть переданный объем
+     *
+     * @param request запрос
+     * @param stats   счетчики запроса
+     * @return тело, которое будет отправлено, null если тела нет
+     */
+    protected HttpEntity prepareRequestEntity(HttpUriRequestBase request, TransferStats stats) {
+        HttpEntity entity = request.getEntity();
+        if (entity == null) return null;
+        stats.setRequestBytes(entity.getContentLength());
+        if (entity.getContentEncoding() == null
+                && requestCompressionThreshold != null
+                && entity.getContentLength() >= requestCompressionThreshold) {
+            entity = new GzipCompressingEntity(entity);
+        }
+        if (!GZIP_CONTENT_ENCODING.equalsIgnoreCase(entity.getContentEncoding())) return entity;
+        //длина сжатого тела заранее неизвестна, она считается при отправке
+        stats.setRequestEncoding(GZIP_CONTENT_ENCODING);
+        entity = new CountingEntity(entity);
+        request.setEntity(entity);
+        return entity;
+    }
+
+
+    /**
+     * Подменить тело ответа распаковывающей оберткой.
+     * Заголовки сжатия удаляются, так как тело после обертки уже не сжато
+     *
+     * @param response ответ
+     * @param stats    счетчики запроса
+     */
+    protected void decodeResponse(ClassicHttpResponse response, TransferStats stats) throws IOException {
+        stats.setStatus(response.getCode());
+        HttpEntity entity = response.getEntity();
+        if (entity == null) return;
+        String encoding = DecodingResponseEntity.normalizeEncoding(entity.getContentEncoding());
+        stats.setResponseEncoding(encoding);
+        if (encoding != null) {
+            response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+            response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+        }
+        response.setEntity(new DecodingResponseEntity(entity, encoding, stats));
+    }
+
+    /**
+     * Зафиксировать объем переданных данных запроса
+     *
+     * @param requestEntity отправленное тело запроса
+     * @param stats         счетчики запроса
+     */
+    protected void completeTransfer(HttpEntity requestEntity, TransferStats stats) {
+        if (requestEntity instanceof CountingEntity countingEntity) {
+            stats.setRequestWireBytes(countingEntity.getWrittenBytes());
+        } else if (requestEntity != null) {
+            stats.setRequestWireBytes(requestEntity.getContentLength());
+        }
+        compressionStats.record(stats);
+        logger.debug("{} transfer: {}", stats.getOperation(), stats);
+    }
+
     /**
      * Проверить ответ на код и преобразовать текст ответа
      *
@@ -301,11 +1229,86 @@ public class Connector {
      * @param response ответ
      * @return ответ как массив байтов
      */
-    protected byte[] readBodyAsBytes(ClassicHttpResponse response) {
+    protected byte[] readBodyAsBytes(ClassicHttpResponse response) {
+        try {
+            return EntityUtils.toByteArray(response.getEntity());
+        } catch (IOException e) {
+            throw new ResponseReadException(e);
+        }
+    }
+
+    /**
+     * Прочитать ответ как поток, не загружая его в память целиком
+     *
+     * @param response  ответ
+     * @param processor обработчик потока
+     * @param <T>       тип результата обработки
+     * @return результат обработки
+     */
+    protected <T> T readBodyAsStream(ClassicHttpResponse response, StreamProcessor<T> processor) {
+        HttpEntity entity = response.getEntity();
+        try (InputStream inputStream = entity != null ? entity.getContent() : InputStream.nullInputStream()) {
+            return processor.process(inputStream);
+        } catch (IOException e) {
+            throw new ResponseReadException(e);
+        }
+    }
+
+    /**
+     * Прочитать поток как xml через StAX
+     *
+     * @param inputStream поток с xml
+     * @param processor   обработчик xml
+     * @param <T>         тип результата обработки
+     * @return результат обработки
+     */
+    protected <T> T readXml(InputStream inputStream, XmlStreamProcessor<T> processor) {
+        try {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(inputStream);
+            try {
+                return processor.process(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new ResponseReadException(e);
+        }
+    }
+
+    /**
+     * Создает фабрику StAX reader'ов с отключенными DTD и внешними сущностями
+     *
+     * @return фабрика StAX reader'ов
+     */
+    public static XMLInputFactory newXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Записать поток в файл. Запись идет во временный файл рядом с целевым,
+     * который затем перемещается на место целевого, поэтому при сбое целевой файл не портится
+     *
+     * @param inputStream поток
+     * @param target      целевой файл
+     * @return количество записанных байтов
+     * @throws IOException если не удалось записать файл
+     */
+    protected static long copyToFile(InputStream inputStream, Path target) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
         try {
-            return EntityUtils.toByteArray(response.getEntity());
-        } catch (IOException e) {
-            throw new ResponseReadException(e);
+            long size;
+            try (OutputStream outputStream = Files.newOutputStream(temp)) {
+                size = inputStream.transferTo(outputStream);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
         }
     }
 
@@ -359,6 +1362,22 @@ public class Connector {
         }
     }
 
+    /**
+     * Прочитать JSON из ранее полученного тела ответа
+     *
+     * @param body          тело ответа
+     * @param typeReference требуемый тип
+     * @param <T>           требуемый тип
+     * @return тело, десерилизованное в требуемый тип
+     */
+    protected <T> T readJson(byte[] body, TypeReference<T> typeReference) {
+        try {
+            return objectMapper.readValue(body, typeReference);
+        } catch (IOException e) {
+            throw new ResponseReadException(e);
+        }
+    }
+
     /**
      * Делает из Map JSON строку, которую потом можно затолкать в url
      *
@@ -445,7 +1464,11 @@ public class Connector {
             entityBuilder.addBinaryBody(String.valueOf(i), files.get(i));
         }
         httpPost.setEntity(entityBuilder.build());
-        executePost(httpPost, PATH_SEGMENT, (ClassicHttpResponse response) -> null);
+        try {
+            executePost(httpPost, PATH_SEGMENT, (ClassicHttpResponse response) -> null);
+        } finally {
+            invalidateObject(targetObjectUuid);
+        }
     }
 
     /**
@@ -479,7 +1502,11 @@ public class Connector {
                 .addBinaryBody("file", fileBytes, ContentType.TEXT_PLAIN, fileName)
                 .build();
         httpPost.setEntity(entity);
-        executePost(httpPost, PATH_SEGMENT, response -> null);
+        try {
+            executePost(httpPost, PATH_SEGMENT, response -> null);
+        } finally {
+            invalidateObject(targetObjectUuid);
+        }
     }
 
     /**
@@ -561,6 +1588,122 @@ public class Connector {
         return executePost(httpPost, PATH_SEGMENT, this::readBodyAsJson);
     }
 
+    /**
+     * Создание множества объектов частями.
+     * Список делится на части по chunkSize объектов, части отправляются через createM2MMultiple
+     * не более чем parallelism одновременными запросами (одновременных соединений с хостом по умолчанию не больше 5).
+     * Повторно отправляются только части, которые не были отправлены из-за отказа или таймаута соединения,
+     * так как после отправки тела сервер мог успеть создать объекты, и повтор создал бы их еще раз.
+     * Если подключена политика повтора ({@link #setRetryPolicy(RetryPolicy)}), повторы решает только она, а maxRetries не действует
+     *
+     * @param objects     лист с атрибутами создаваемых объектов, каждый с атрибутом metaClass
+     * @param chunkSize   количество объектов в одном запросе
+     * @param parallelism количество одновременно отправляемых частей
+     * @param maxRetries  количество повторов части, не дошедшей до сервера
+     * @return элементы ответа в порядке входного списка с разбором на созданные объекты и ошибки
+     */
+    @SuppressWarnings("unused")
+    public CreateM2MMultipleResult createM2MMultiple(
+            List<Map<String, Object>> objects,
+            int chunkSize,
+            int parallelism,
+            int maxRetries
+    ) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+        CreateM2MMultipleResult result = new CreateM2MMultipleResult(objects.size());
+        if (objects.isEmpty()) return result;
+        int chunks = (objects.size() + chunkSize - 1) / chunkSize;
+        //повторы политики повтора и повторы частей не складываются
+        int retries = retryPolicy != null ? 0 : maxRetries;
+        //parallelism потоков разбирают части по очереди
+        AtomicInteger nextChunk = new AtomicInteger();
+        Runnable worker = RequestContext.wrap(() -> {
+            for (int chunk = nextChunk.getAndIncrement(); chunk < chunks; chunk = nextChunk.getAndIncrement()) {
+                int from = chunk * chunkSize;
+                createM2MChunk(objects, from, Math.min(from + chunkSize, objects.size()), retries, result);
+            }
+        });
+        ExecutorService executor = getBatchExecutor();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.min(parallelism, chunks); i++) futures.add(executor.submit(worker));
+            for (Future<?> future : futures) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestProcessException(e);
+        } catch (ExecutionException e) {
+            throw new RequestProcessException(e.getCause());
+        } finally {
+            for (Future<?> future : futures) future.cancel(true);
+        }
+        return result;
+    }
+
+    /**
+     * Отправить часть списка объектов на создание, повторяя ее, если она не была отправлена
+     *
+     * @param objects    весь список объектов
+     * @param from       индекс первого объекта части
+     * @param to         индекс после последнего объекта части
+     * @param maxRetries количество повторов
+     * @param result     результат, в который раскладывается ответ
+     */
+    protected void createM2MChunk(
+            List<Map<String, Object>> objects,
+            int from,
+            int to,
+            int maxRetries,
+            CreateM2MMultipleResult result
+    ) {
+        List<Map<String, Object>> chunk = objects.subList(from, to);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                List<HashMap<String, Object>> items = createM2MMultiple(chunk);
+                if (items == null || items.size() != chunk.size()) {
+                    throw new IllegalStateException(
+                            "create-m2m-multiple returned " + (items == null ? 0 : items.size()) + " items for " + chunk.size() + " objects"
+                    );
+                }
+                result.merge(from, items);
+                return;
+            } catch (RequestProcessException e) {
+                if (attempt >= maxRetries || !isNotSent(e)) {
+                    result.fail(from, to, e);
+                    return;
+                }
+                long pause = CHUNK_RETRY_PAUSE_MS * (attempt + 1);
+                if (!RequestContext.current().hasTimeFor(Duration.ofMillis(pause))) {
+                    result.fail(from, to, e);
+                    return;
+                }
+                logger.warn("create-m2m-multiple chunk [{}, {}) failed, retry {} of {}", from, to, attempt + 1, maxRetries, e);
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    result.fail(from, to, e);
+                    return;
+                }
+            } catch (RuntimeException e) {
+                result.fail(from, to, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Завершился ли запрос ошибкой до отправки: соединение не установлено или не установлено вовремя.
+     * Таймаут ответа и обрыв после отправки тела сюда не относятся: сервер мог успеть выполнить запрос
+     *
+     * @param exception ошибка запроса
+     * @return true если запрос точно не дошел до сервера
+     */
+    protected static boolean isNotSent(RequestProcessException exception) {
+        Throwable cause = exception.getCause();
+        return cause instanceof ConnectException || cause instanceof ConnectTimeoutException;
+    }
+
     /**
      * Удаление объекта
      *
@@ -569,7 +1712,11 @@ public class Connector {
     public void delete(String objectUuid) {
         String PATH_SEGMENT = "delete";
         String path = BASE_REST_PATH + "/" + PATH_SEGMENT + "/" + objectUuid;
-        executeGet(new HttpGet(getUri(path)), PATH_SEGMENT, response -> null);
+        try {
+            executeGet(new HttpGet(getUri(path)), PATH_SEGMENT, response -> null);
+        } finally {
+            invalidateObject(objectUuid);
+        }
     }
 
     /**
@@ -583,7 +1730,32 @@ public class Connector {
         String path = BASE_REST_PATH + "/" + PATH_SEGMENT + "/" + objectUuid;
         HttpPost httpPost = new HttpPost(getUri(path));
         httpPost.setEntity(newStringEntity(attributes));
-        executePost(httpPost, PATH_SEGMENT, response -> null);
+        try {
+            executePost(httpPost, PATH_SEGMENT, response -> null);
+        } finally {
+            invalidateObject(objectUuid);
+        }
+    }
+
+    /**
+     * Редактирование только измененных атрибутов.
+     * Новые значения сравниваются с предыдущим состоянием объекта (см. {@link AttributeDiff}),
+     * в edit уходят только отличающиеся атрибуты, а если ничего не изменилось, запрос не отправляется
+     *
+     * @param objectUuid uuid изменяемого объекта, например, serviceCall$501.
+     * @param previous   предыдущее состояние объекта, например, результат get
+     * @param updated    новые значения атрибутов
+     * @return отправленные атрибуты, пустой Map если запрос не отправлялся
+     */
+    @SuppressWarnings("unused")
+    public Map<String, Object> editChanged(String objectUuid, Map<String, Object> previous, Map<String, Object> updated) {
+        Map<String, Object> changed = AttributeDiff.changed(previous, updated);
+        if (changed.isEmpty()) {
+            logger.debug("edit of \"{}\" skipped: no attributes changed", objectUuid);
+            return changed;
+        }
+        edit(objectUuid, changed);
+        return changed;
     }
 
     /**
@@ -636,7 +1808,172 @@ public class Connector {
         if (returnAttrs != null) params.put("attrs", String.join(",", returnAttrs));
         HttpPost httpPost = new HttpPost(getUri(path, params));
         httpPost.setEntity(newStringEntity(attributes));
-        return executePost(httpPost, PATH_SEGMENT, this::readBodyAsJson);
+        try {
+            return executePost(httpPost, PATH_SEGMENT, this::readBodyAsJson);
+        } finally {
+            invalidateObject(objectUuid);
+        }
+    }
+
+    /**
+     * Массовое редактирование объектов одним запросом exec на часть объектов.
+     * Каждый объект редактируется через utils.edit в отдельной транзакции, ошибка объекта не прерывает обработку остальных.
+     * Значения атрибутов передаются в скрипт как JSON, поэтому ссылки задаются UUID, а даты - в формате, который понимает utils.edit
+     *
+     * @param changes изменяемые атрибуты по UUID объектов
+     * @return результат по каждому объекту
+     */
+    @SuppressWarnings("unused")
+    public BulkOperationResult editMany(Map<String, Map<String, Object>> changes) {
+        return editMany(changes, DEFAULT_BULK_CHUNK_SIZE, null);
+    }
+
+    /**
+     * Массовое редактирование объектов одним запросом exec на часть объектов.
+     * Каждый объект редактируется через utils.edit в отдельной транзакции, ошибка объекта не прерывает обработку остальных.
+     * Значения атрибутов передаются в скрипт как JSON, поэтому ссылки задаются UUID, а даты - в формате, который понимает utils.edit
+     *
+     * @param changes     изменяемые атрибуты по UUID объектов
+     * @param chunkSize   количество объектов в одном скрипте
+     * @param readTimeout время ожидания ответа на каждую часть в мс
+     * @return результат по каждому объекту
+     */
+    public BulkOperationResult editMany(Map<String, Map<String, Object>> changes, int chunkSize, Long readTimeout) {
+        List<Map<String, Object>> items = new ArrayList<>(changes.size());
+        changes.forEach((uuid, attributes) -> {
+            Map<String, Object> item = new HashMap<>();
+            item.put(BulkScripts.UUID_FIELD, uuid);
+            item.put("attributes", attributes);
+            items.add(item);
+        });
+        return executeBulk(items, BulkScripts.EDIT_ITEM_BODY, chunkSize, readTimeout);
+    }
+
+    /**
+     * Массовое удаление объектов одним запросом exec на часть объектов.
+     * Каждый объект удаляется через utils.delete в отдельной транзакции, ошибка объекта не прерывает обработку остальных
+     *
+     * @param objectUuids UUID удаляемых объектов
+     * @return результат по каждому объекту
+     */
+    @SuppressWarnings("unused")
+    public BulkOperationResult deleteMany(Collection<String> objectUuids) {
+        return deleteMany(objectUuids, DEFAULT_BULK_CHUNK_SIZE, null);
+    }
+
+    /**
+     * Массовое удаление объектов одним запросом exec на часть объектов.
+     * Каждый объект удаляется через utils.delete в отдельной транзакции, ошибка объекта не прерывает обработку остальных
+     *
+     * @param objectUuids UUID удаляемых объектов
+     * @param chunkSize   количество объектов в одном скрипте
+     * @param readTimeout время ожидания ответа на каждую часть в мс
+     * @return результат по каждому объекту
+     */
+    public BulkOperationResult deleteMany(Collection<String> objectUuids, int chunkSize, Long readTimeout) {
+        List<Map<String, Object>> items = new ArrayList<>(objectUuids.size());
+        for (String uuid : objectUuids) items.add(Map.of(BulkScripts.UUID_FIELD, uuid));
+        return executeBulk(items, BulkScripts.DELETE_ITEM_BODY, chunkSize, readTimeout);
+    }
+
+    /**
+     * Выполнить массовую операцию частями, последовательно
+     *
+     * @param items       элементы с полем uuid
+     * @param itemBody    groovy код обработки элемента
+     * @param chunkSize   количество элементов в одном скрипте
+     * @param readTimeout время ожидания ответа на каждую часть в мс
+     * @return результат по каждому объекту
+     */
+    protected BulkOperationResult executeBulk(List<Map<String, Object>> items, String itemBody, int chunkSize, Long readTimeout) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+        BulkOperationResult result = new BulkOperationResult();
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            List<Map<String, Object>> chunk = items.subList(from, Math.min(from + chunkSize, items.size()));
+            try {
+                BulkScripts.merge(execBulkChunk(chunk, null, itemBody, readTimeout), result);
+            } catch (RuntimeException e) {
+                for (Map<String, Object> item : chunk) result.failures.put(String.valueOf(item.get(BulkScripts.UUID_FIELD)), e);
+            } finally {
+                for (Map<String, Object> item : chunk) invalidateObject(String.valueOf(item.get(BulkScripts.UUID_FIELD)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Выполнить скрипт массовой операции над частью элементов и проверить, что результат соответствует элементам
+     *
+     * @param chunk       элементы с полем uuid
+     * @param prelude     groovy код, выполняемый перед обработкой элементов, может быть null
+     * @param itemBody    groovy код обработки элемента
+     * @param readTimeout время ожидания ответа в мс
+     * @return результаты элементов в порядке элементов
+     */
+    protected List<HashMap<String, Object>> execBulkChunk(
+            List<Map<String, Object>> chunk,
+            String prelude,
+            String itemBody,
+            Long readTimeout
+    ) {
+        String output = exec(BulkScripts.build(chunk, prelude, itemBody, objectMapper), readTimeout);
+        List<HashMap<String, Object>> results = BulkScripts.parse(output, objectMapper);
+        if (results.size() != chunk.size()) {
+            throw new IllegalStateException("Bulk script returned " + results.size() + " results for " + chunk.size() + " objects");
+        }
+        for (int i = 0; i < chunk.size(); i++) {
+            Object expected = chunk.get(i).get(BulkScripts.UUID_FIELD);
+            Object actual = results.get(i).get(BulkScripts.UUID_FIELD);
+            if (!Objects.equals(expected, actual)) {
+                throw new IllegalStateException("Bulk script returned result for " + actual + " instead of " + expected);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Получение множества объектов одним запросом exec на часть объектов
+     *
+     * @param objectUuids uuid интересующих объектов
+     * @param returnAttrs коды атрибутов, которые необходимо вернуть. Если параметр будет пустой, то вернутся все атрибуты
+     * @return объекты по UUID и UUID не найденных объектов
+     */
+    @SuppressWarnings("unused")
+    public GetManyResult getMany(Collection<String> objectUuids, List<String> returnAttrs) {
+        return getMany(objectUuids, returnAttrs, DEFAULT_BULK_CHUNK_SIZE, null);
+    }
+
+    /**
+     * Получение множества объектов одним запросом exec на часть объектов.
+     * Объекты сериализуются скриптом, а не REST методом get, поэтому формат близок к get, но не совпадает с ним:
+     * ссылки на объекты отдаются как Map с UUID и title, даты - строкой в формате yyyy-MM-dd HH:mm:ss,
+     * значения прочих типов - строкой (toString)
+     *
+     * @param objectUuids uuid интересующих объектов
+     * @param returnAttrs коды атрибутов, которые необходимо вернуть. Если параметр будет пустой, то вернутся все атрибуты
+     * @param chunkSize   количество объектов в одном скрипте
+     * @param readTimeout время ожидания ответа на каждую часть в мс
+     * @return объекты по UUID и UUID не найденных объектов
+     */
+    public GetManyResult getMany(Collection<String> objectUuids, List<String> returnAttrs, int chunkSize, Long readTimeout) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+        List<Map<String, Object>> items = new ArrayList<>(objectUuids.size());
+        for (String uuid : new LinkedHashSet<>(objectUuids)) {
+            Map<String, Object> item = new HashMap<>();
+            item.put(BulkScripts.UUID_FIELD, uuid);
+            item.put("attrs", returnAttrs);
+            items.add(item);
+        }
+        GetManyResult result = new GetManyResult();
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            List<Map<String, Object>> chunk = items.subList(from, Math.min(from + chunkSize, items.size()));
+            try {
+                result.merge(execBulkChunk(chunk, BulkScripts.GET_PRELUDE, BulkScripts.GET_ITEM_BODY, readTimeout));
+            } catch (RuntimeException e) {
+                for (Map<String, Object> item : chunk) result.failures.put(String.valueOf(item.get(BulkScripts.UUID_FIELD)), e);
+            }
+        }
+        return result;
     }
 
     /**
@@ -690,11 +2027,70 @@ public class Connector {
         String path = BASE_REST_PATH + "/" + PATH_SEGMENT + "/" + objectUuid;
         HashMap<String, String> params = new HashMap<>();
         if (returnAttrs != null) params.put("attrs", String.join(",", returnAttrs));
-        return executeGet(
-                new HttpGet(getUri(path, params)),
-                PATH_SEGMENT,
-                this::readBodyAsJson
-        );
+        URI uri = getUri(path, params);
+        if (objectCache == null && requestCoalescer == null) {
+            return executeHedged(() -> new HttpGet(uri), PATH_SEGMENT, this::readBodyAsJson);
+        }
+        byte[] body = objectCache != null ? objectCache.get(objectUuid, returnAttrs) : null;
+        if (body == null) {
+            long stamp = objectCache != null ? objectCache.stamp() : 0;
+            //метка в ключе: вызов после изменения объекта не присоединяется к запросу, отправленному до изменения
+            body = coalesce(
+                    PATH_SEGMENT,
+                    PATH_SEGMENT + " " + uri + " " + stamp,
+                    () -> executeHedged(() -> new HttpGet(uri), PATH_SEGMENT, this::readBodyAsBytes)
+            );
+            if (objectCache != null) objectCache.put(objectUuid, returnAttrs, body, stamp);
+        }
+        return readJson(body, new TypeReference<>() {
+        });
+    }
+
+    /**
+     * Получение информации об объекте с предзагрузкой объектов по ссылкам, см. {@link ReferencePrefetcher}
+     *
+     * @param objectUuid    uuid интересующего объекта
+     * @param returnAttrs   коды атрибутов, которые необходимо вернуть в ответе. Если параметр будет пустой, то вернется весь объект.
+     * @param prefetchPaths пути ссылочных атрибутов, объекты по которым нужно загрузить и подставить вместо ссылок, вложенные через точку
+     * @return объект с подставленными объектами по ссылкам
+     */
+    @SuppressWarnings("unused")
+    public HashMap<String, Object> getWithPrefetch(String objectUuid, List<String> returnAttrs, List<String> prefetchPaths) {
+        HashMap<String, Object> object = get(objectUuid, withPrefetchAttrs(returnAttrs, prefetchPaths));
+        getReferencePrefetcher().prefetch(List.of(object), prefetchPaths, null);
+        return object;
+    }
+
+    /**
+     * Поиск бизнес объектов с предзагрузкой объектов по ссылкам, см. {@link ReferencePrefetcher}.
+     * Ссылки на один и тот же объект во всех найденных объектах загружаются одним запросом
+     *
+     * @param metaClassCode fqn типа (класса) объекта
+     * @param searchAttrs   атрибуты и их значения, по которым осуществляется поиск
+     * @param returnAttrs   коды атрибутов, которые необходимо вернуть в ответе. Если параметр будет пустой, то вернется весь объект
+     * @param prefetchPaths пути ссылочных атрибутов, объекты по которым нужно загрузить и подставить вместо ссылок, вложенные через точку
+     * @return список найденных объектов с подставленными объектами по ссылкам
+     */
+    @SuppressWarnings("unused")
+    public List<HashMap<String, Object>> findWithPrefetch(
+            String metaClassCode,
+            Map<String, Object> searchAttrs,
+            List<String> returnAttrs,
+            List<String> prefetchPaths
+    ) {
+        List<HashMap<String, Object>> objects = find(metaClassCode, searchAttrs, withPrefetchAttrs(returnAttrs, prefetchPaths));
+        getReferencePrefetcher().prefetch(objects, prefetchPaths, null);
+        return objects;
+    }
+
+    /**
+     * Добавить к запрашиваемым атрибутам первые атрибуты путей предзагрузки
+     */
+    protected static List<String> withPrefetchAttrs(List<String> returnAttrs, List<String> prefetchPaths) {
+        if (returnAttrs == null) return null;
+        Set<String> attrs = new LinkedHashSet<>(returnAttrs);
+        for (String path : prefetchPaths) attrs.add(path.split("\\.")[0]);
+        return new ArrayList<>(attrs);
     }
 
     /**
@@ -771,9 +2167,21 @@ public class Connector {
         if (returnAttrs != null) params.put("attrs", String.join(",", returnAttrs));
         if (offset != null) params.put("offset", offset.toString());
         if (limit != null) params.put("limit", limit.toString());
-        HttpPost httpPost = new HttpPost(getUri(path, params));
-        httpPost.setEntity(newStringEntity(searchAttrs));
-        return executePost(httpPost, PATH_SEGMENT, this::readBodyAsJson);
+        URI uri = getUri(path, params);
+        String requestBody = writeJson(searchAttrs);
+        Supplier<HttpPost> requestFactory = () -> {
+            HttpPost httpPost = new HttpPost(uri);
+            httpPost.setEntity(new StringEntity(requestBody, ContentType.APPLICATION_JSON));
+            return httpPost;
+        };
+        if (requestCoalescer == null) return executeHedged(requestFactory, PATH_SEGMENT, this::readBodyAsJson);
+        byte[] body = coalesce(
+                PATH_SEGMENT,
+                PATH_SEGMENT + " " + uri + "\n" + requestBody,
+                () -> executeHedged(requestFactory, PATH_SEGMENT, this::readBodyAsBytes)
+        );
+        return readJson(body, new TypeReference<>() {
+        });
     }
 
     /**
@@ -902,16 +2310,30 @@ public class Connector {
     }
 
     /**
-     * Получить метаинформацию с инсталляции
+     * Получить метаинформацию с инсталляции.
+     * Xml декодируется как UTF-8 и с кешем метаинформации, и без него
      *
      * @param readTimeout ожидание ответа в мс
      * @return строка с xml-ником метаинформации
      */
     public String metainfo(Long readTimeout) {
+        if (metainfoCache != null) {
+            return metainfo(inputStream -> new String(inputStream.readAllBytes(), StandardCharsets.UTF_8), readTimeout);
+        }
         String PATH_SEGMENT = "metainfo";
         String path = BASE_SMPSYNC_PATH + "/" + PATH_SEGMENT;
-        HttpGet httpGet = new HttpGet(getUri(path));
-        return executeGet(httpGet, PATH_SEGMENT, this::readBodyAsString, readTimeout);
+        URI uri = getUri(path);
+        //таймаут в ключе: вызов не должен получить ошибку по более короткому таймауту другого вызова
+        return coalesce(
+                PATH_SEGMENT,
+                PATH_SEGMENT + " " + uri + " " + readTimeout,
+                () -> executeGet(
+                        new HttpGet(uri),
+                        PATH_SEGMENT,
+                        response -> new String(readBodyAsBytes(response), StandardCharsets.UTF_8),
+                        readTimeout
+                )
+        );
     }
 
     /**
@@ -923,6 +2345,77 @@ public class Connector {
         return metainfo(null);
     }
 
+    /**
+     * Получить метаинформацию с инсталляции как поток, не загружая ее в память целиком.
+     * Если к коннектору подключен кеш метаинформации, поток читается из кеша
+     *
+     * @param processor   обработчик потока xml
+     * @param readTimeout ожидание ответа в мс
+     * @param <T>         тип результата обработки
+     * @return результат обработки
+     */
+    public <T> T metainfo(StreamProcessor<T> processor, Long readTimeout) {
+        if (metainfoCache != null) return metainfoCache.read(this, processor, readTimeout);
+        return downloadMetainfo(processor, readTimeout);
+    }
+
+    /**
+     * Выгрузить метаинформацию с инсталляции как поток в обход кеша метаинформации
+     *
+     * @param processor   обработчик потока xml
+     * @param readTimeout ожидание ответа в мс
+     * @param <T>         тип результата обработки
+     * @return результат обработки
+     */
+    public <T> T downloadMetainfo(StreamProcessor<T> processor, Long readTimeout) {
+        String PATH_SEGMENT = "metainfo";
+        String path = BASE_SMPSYNC_PATH + "/" + PATH_SEGMENT;
+        HttpGet httpGet = new HttpGet(getUri(path));
+        return executeGet(
+                httpGet,
+                PATH_SEGMENT,
+                (ClassicHttpResponse response) -> readBodyAsStream(response, processor),
+                readTimeout
+        );
+    }
+
+    /**
+     * Выгрузить метаинформацию с инсталляции в поток
+     *
+     * @param outputStream поток, в который будет записан xml
+     * @param readTimeout  ожидание ответа в мс
+     * @return количество записанных байтов
+     */
+    @SuppressWarnings("unused")
+    public long metainfo(OutputStream outputStream, Long readTimeout) {
+        return metainfo(inputStream -> inputStream.transferTo(outputStream), readTimeout);
+    }
+
+    /**
+     * Выгрузить метаинформацию с инсталляции в файл
+     *
+     * @param target      файл, в который будет записан xml
+     * @param readTimeout ожидание ответа в мс
+     * @return количество записанных байтов
+     */
+    @SuppressWarnings("unused")
+    public long metainfo(Path target, Long readTimeout) {
+        return metainfo(inputStream -> copyToFile(inputStream, target), readTimeout);
+    }
+
+    /**
+     * Обработать метаинформацию инсталляции инкрементально через StAX, по мере получения ответа.
+     * Память не зависит от размера метаинформации, если ее не накапливает сам обработчик
+     *
+     * @param processor   обработчик xml
+     * @param readTimeout ожидание ответа в мс
+     * @param <T>         тип результата обработки
+     * @return результат обработки
+     */
+    public <T> T metainfoXml(XmlStreamProcessor<T> processor, Long readTimeout) {
+        return metainfo(inputStream -> readXml(inputStream, processor), readTimeout);
+    }
+
     /**
      * Загрузить метаинформацию
      *
@@ -931,14 +2424,84 @@ public class Connector {
      */
     @SuppressWarnings("unused")
     public void uploadMetainfo(String xmlFileContent, Long readTimeout) {
+        HttpEntity entity = MultipartEntityBuilder.create()
+                .addBinaryBody("metainfo", xmlFileContent.getBytes(StandardCharsets.UTF_8), METAINFO_CONTENT_TYPE, METAINFO_FILE_NAME)
+                .build();
+        uploadMetainfo(entity, readTimeout, false);
+    }
+
+    /**
+     * Загрузить метаинформацию из файла. Файл читается потоком и не загружается в память
+     *
+     * @param xmlFile     xml файл метаинформации в UTF-8
+     * @param readTimeout read timeout
+     */
+    @SuppressWarnings("unused")
+    public void uploadMetainfo(Path xmlFile, Long readTimeout) {
+        uploadMetainfo(xmlFile, readTimeout, false);
+    }
+
+    /**
+     * Загрузить метаинформацию из файла. Файл читается потоком и не загружается в память
+     *
+     * @param xmlFile     xml файл метаинформации в UTF-8
+     * @param readTimeout read timeout
+     * @param gzip        сжимать тело запроса gzip (Content-Encoding: gzip).
+     *                    Включать, только если инсталляция или прокси перед ней распаковывают сжатые запросы
+     */
+    public void uploadMetainfo(Path xmlFile, Long readTimeout, boolean gzip) {
+        HttpEntity entity = MultipartEntityBuilder.create()
+                .addBinaryBody("metainfo", xmlFile.toFile(), METAINFO_CONTENT_TYPE, METAINFO_FILE_NAME)
+                .build();
+        uploadMetainfo(entity, readTimeout, gzip);
+    }
+
+    /**
+     * Загрузить метаинформацию из потока. Поток читается по мере отправки и не загружается в память,
+     * закрывать его должен вызывающий
+     *
+     * @param xmlStream   поток xml метаинформации в UTF-8
+     * @param readTimeout read timeout
+     */
+    @SuppressWarnings("unused")
+    public void uploadMetainfo(InputStream xmlStream, Long readTimeout) {
+        uploadMetainfo(xmlStream, readTimeout, false);
+    }
+
+    /**
+     * Загрузить метаинформацию из потока. Поток читается по мере отправки и не загружается в память,
+     * закрывать его должен вызывающий
+     *
+     * @param xmlStream   поток xml метаинформации в UTF-8
+     * @param readTimeout read timeout
+     * @param gzip        сжимать тело запроса gzip (Content-Encoding: gzip).
+     *                    Включать, только если инсталляция или прокси перед ней распаковывают сжатые запросы
+     */
+    public void uploadMetainfo(InputStream xmlStream, Long readTimeout, boolean gzip) {
+        HttpEntity entity = MultipartEntityBuilder.create()
+                .addBinaryBody("metainfo", xmlStream, METAINFO_CONTENT_TYPE, METAINFO_FILE_NAME)
+                .build();
+        uploadMetainfo(entity, readTimeout, gzip);
+    }
+
+    /**
+     * Загрузить метаинформацию, собранную в multipart сущность
+     *
+     * @param entity      multipart сущность с частью metainfo
+     * @param readTimeout read timeout
+     * @param gzip        сжимать тело запроса gzip
+     */
+    protected void uploadMetainfo(HttpEntity entity, Long readTimeout, boolean gzip) {
         String PATH_SEGMENT = "upload-metainfo";
         String path = BASE_SMPSYNC_PATH + "/" + PATH_SEGMENT;
         HttpPost httpPost = new HttpPost(getUri(path));
-        HttpEntity entity = MultipartEntityBuilder.create()
-                .addBinaryBody("metainfo", xmlFileContent.getBytes(), ContentType.APPLICATION_XML, "metainfo.xml")
-                .build();
-        httpPost.setEntity(entity);
-        executePost(httpPost, PATH_SEGMENT, response -> null, readTimeout);
+        httpPost.setEntity(gzip ? new GzipCompressingEntity(entity) : entity);
+        try {
+            executePost(httpPost, PATH_SEGMENT, response -> null, readTimeout);
+        } finally {
+            //сервер мог применить загрузку, даже если ответ не дошел
+            if (metainfoCache != null) metainfoCache.invalidate(this);
+        }
     }
 
     /**
@@ -984,6 +2547,51 @@ public class Connector {
         return getScripts(null);
     }
 
+    /**
+     * Получить архив со скриптами из инсталляции как поток.
+     * Архив не загружается в память целиком и не преобразуется в строку
+     *
+     * @param processor   обработчик потока архива
+     * @param readTimeout время ожидания ответа от сервера
+     * @param <T>         тип результата обработки
+     * @return результат обработки
+     */
+    public <T> T getScripts(StreamProcessor<T> processor, Long readTimeout) {
+        String PATH_SEGMENT = "scripts";
+        String path = BASE_SMPSYNC_PATH + "/" + PATH_SEGMENT;
+        var httpGet = new HttpGet(getUri(path));
+        return executeGet(
+                httpGet,
+                PATH_SEGMENT,
+                (ClassicHttpResponse response) -> readBodyAsStream(response, processor),
+                readTimeout
+        );
+    }
+
+    /**
+     * Выгрузить архив со скриптами из инсталляции в поток
+     *
+     * @param outputStream поток, в который будет записан архив
+     * @param readTimeout  время ожидания ответа от сервера
+     * @return количество записанных байтов
+     */
+    @SuppressWarnings("unused")
+    public long getScripts(OutputStream outputStream, Long readTimeout) {
+        return getScripts(inputStream -> inputStream.transferTo(outputStream), readTimeout);
+    }
+
+    /**
+     * Выгрузить архив со скриптами из инсталляции в файл
+     *
+     * @param target      файл, в который будет записан архив
+     * @param readTimeout время ожидания ответа от сервера
+     * @return количество записанных байтов
+     */
+    @SuppressWarnings("unused")
+    public long getScripts(Path target, Long readTimeout) {
+        return getScripts(inputStream -> copyToFile(inputStream, target), readTimeout);
+    }
+
     /**
      * Отправить скрипты на загрузку в инсталляцию
      *
@@ -143,7 +143,6 @@ public class ConnectorParams {
         return ignoreSSL;
     }
 
-    @SuppressWarnings("unused")
     public String getInstallationId() {
         return installationId;
     }
@@ -0,0 +1,23 @@
+package ru.kazantsev.nsmp.basic_api_connector;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Обработчик тела ответа, читаемого как поток.
+ * Поток открыт только на время вызова process и закрывается коннектором после него.
+ *
+ * @param <T> тип результата обработки
+ */
+@FunctionalInterface
+public interface StreamProcessor<T> {
+
+    /**
+     * Обработать поток тела ответа
+     *
+     * @param inputStream поток тела ответа
+     * @return результат обработки
+     * @throws IOException если не удалось прочитать поток
+     */
+    T process(InputStream inputStream) throws IOException;
+}
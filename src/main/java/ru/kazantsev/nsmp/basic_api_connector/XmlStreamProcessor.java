@@ -0,0 +1,23 @@
+package ru.kazantsev.nsmp.basic_api_connector;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Обработчик xml тела ответа, читаемого инкрементально через StAX.
+ * Reader открыт поверх живого ответа только на время вызова process
+ *
+ * @param <T> тип результата обработки
+ */
+@FunctionalInterface
+public interface XmlStreamProcessor<T> {
+
+    /**
+     * Обработать xml
+     *
+     * @param reader StAX reader, спозиционированный на начале документа
+     * @return результат обработки
+     * @throws XMLStreamException если xml не удалось прочитать
+     */
+    T process(XMLStreamReader reader) throws XMLStreamException;
+}
@@ -0,0 +1,35 @@
+package ru.kazantsev.nsmp.basic_api_connector.batch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Результат массовой операции над объектами, выполненной скриптом на стороне NSMP
+ */
+public class BulkOperationResult {
+
+    /**
+     * UUID объектов, обработанных успешно
+     */
+    public final List<String> succeeded = new ArrayList<>();
+
+    /**
+     * Ошибки обработки отдельных объектов, ключ - UUID, значение - текст исключения на стороне NSMP
+     */
+    public final Map<String, String> errors = new LinkedHashMap<>();
+
+    /**
+     * Исключения для объектов из частей, скрипт которых не удалось выполнить или разобрать его результат
+     */
+    public final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+
+    /**
+     * Все объекты обработаны успешно
+     */
+    @SuppressWarnings("unused")
+    public boolean isComplete() {
+        return errors.isEmpty() && failures.isEmpty();
+    }
+}
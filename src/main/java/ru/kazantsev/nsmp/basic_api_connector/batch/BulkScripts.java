@@ -0,0 +1,156 @@
+package ru.kazantsev.nsmp.basic_api_connector.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.ResponseReadException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Генерация groovy скриптов для массовых операций через exec.
+ * Данные передаются в скрипт как base64 от JSON, поэтому в текст скрипта не попадает ничего из пользовательских значений.
+ * Каждый элемент обрабатывается отдельно, ошибка элемента не прерывает обработку остальных,
+ * скрипт возвращает JSON массив результатов в порядке элементов: [{uuid: ..., error: ...}, ...]
+ */
+public final class BulkScripts {
+
+    public static final String UUID_FIELD = "uuid";
+    public static final String ERROR_FIELD = "error";
+
+    /**
+     * Максимальная длина одного строкового литерала: константы класса groovy ограничены 65535 байтами
+     */
+    protected static final int LITERAL_LENGTH = 60_000;
+
+    /**
+     * Тело обработки элемента при редактировании, каждый объект редактируется в своей транзакции
+     */
+    public static final String EDIT_ITEM_BODY = """
+            api.tx.call { utils.edit(item.uuid, item.attributes) }
+            [uuid: item.uuid]""";
+
+    /**
+     * Тело обработки элемента при удалении, каждый объект удаляется в своей транзакции
+     */
+    public static final String DELETE_ITEM_BODY = """
+            api.tx.call { utils.delete(item.uuid) }
+            [uuid: item.uuid]""";
+
+    /**
+     * Подготовка к получению объектов: преобразование значений атрибутов в JSON-совместимый вид
+     */
+    public static final String GET_PRELUDE = """
+            def dateFormat = new java.text.SimpleDateFormat('yyyy-MM-dd HH:mm:ss')
+            def toJsonValue
+            toJsonValue = { value ->
+                if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) return value
+                if (value instanceof Date) return dateFormat.format(value)
+                if (value instanceof Collection) return value.collect { toJsonValue(it) }
+                def uuid = null
+                try {
+                    uuid = value.UUID
+                } catch (Exception ignored) {
+                }
+                if (uuid instanceof String) return [UUID: uuid, title: value.title]
+                if (value instanceof Map) return value.collectEntries { k, v -> [(k.toString()): toJsonValue(v)] }
+                return value.toString()
+            }""";
+
+    /**
+     * Тело обработки элемента при получении объекта: missing - объект не найден, object - атрибуты объекта
+     */
+    public static final String GET_ITEM_BODY = """
+            def object = utils.get(item.uuid)
+            if (object == null) return [uuid: item.uuid, missing: true]
+            def codes = item.attrs ?: api.metainfo.getMetaClass(object).attributes*.code
+            def attributes = [UUID: object.UUID]
+            codes.each { code -> attributes[code] = toJsonValue(object[code]) }
+            [uuid: item.uuid, object: attributes]""";
+
+    private BulkScripts() {
+    }
+
+    /**
+     * Собрать скрипт массовой операции
+     *
+     * @param items    элементы, каждый - Map с полем uuid и данными операции
+     * @param itemBody groovy код обработки элемента item, последнее выражение - результат элемента (Map)
+     * @param mapper   object mapper для сериализации элементов
+     * @return текст скрипта
+     */
+    public static String build(List<? extends Map<String, ?>> items, String itemBody, ObjectMapper mapper) {
+        return build(items, null, itemBody, mapper);
+    }
+
+    /**
+     * Собрать скрипт массовой операции
+     *
+     * @param items    элементы, каждый - Map с полем uuid и данными операции
+     * @param prelude  groovy код, выполняемый перед обработкой элементов (общие переменные и замыкания), может быть null
+     * @param itemBody groovy код обработки элемента item, последнее выражение - результат элемента (Map)
+     * @param mapper   object mapper для сериализации элементов
+     * @return текст скрипта
+     */
+    public static String build(List<? extends Map<String, ?>> items, String prelude, String itemBody, ObjectMapper mapper) {
+        String payload;
+        try {
+            payload = Base64.getEncoder().encodeToString(mapper.writeValueAsBytes(items));
+        } catch (JsonProcessingException e) {
+            throw new RequestProcessException(e);
+        }
+        List<String> literals = new ArrayList<>();
+        for (int i = 0; i < payload.length(); i += LITERAL_LENGTH) {
+            literals.add("'" + payload.substring(i, Math.min(i + LITERAL_LENGTH, payload.length())) + "'");
+        }
+        return "def payload = [" + String.join(",\n", literals) + "].join()\n"
+                + "def items = new groovy.json.JsonSlurper().parseText(new String(java.util.Base64.decoder.decode(payload), 'UTF-8'))\n"
+                + (prelude != null ? prelude.strip() + "\n" : "")
+                + "def results = items.collect { item ->\n"
+                + "    try {\n"
+                + itemBody.indent(8)
+                + "    } catch (Throwable e) {\n"
+                + "        [uuid: item.uuid, error: (e.message ?: e.class.name)]\n"
+                + "    }\n"
+                + "}\n"
+                + "return groovy.json.JsonOutput.toJson(results)\n";
+    }
+
+    /**
+     * Разобрать результат скрипта
+     *
+     * @param output результат exec
+     * @param mapper object mapper
+     * @return результаты элементов в порядке элементов
+     */
+    public static List<HashMap<String, Object>> parse(String output, ObjectMapper mapper) {
+        try {
+            return mapper.readValue(output.trim().getBytes(StandardCharsets.UTF_8), new TypeReference<>() {
+            });
+        } catch (IOException e) {
+            throw new ResponseReadException(e);
+        }
+    }
+
+    /**
+     * Разложить результаты элементов в результат операции
+     *
+     * @param items  результаты элементов, разобранные {@link #parse}
+     * @param result результат операции
+     */
+    public static void merge(List<HashMap<String, Object>> items, BulkOperationResult result) {
+        for (HashMap<String, Object> item : items) {
+            String uuid = String.valueOf(item.get(UUID_FIELD));
+            Object error = item.get(ERROR_FIELD);
+            if (error != null) result.errors.put(uuid, String.valueOf(error));
+            else result.succeeded.add(uuid);
+        }
+    }
+}
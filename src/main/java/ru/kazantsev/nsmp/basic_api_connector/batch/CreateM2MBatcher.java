@@ -0,0 +1,261 @@
+package ru.kazantsev.nsmp.basic_api_connector.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.exception.BatchItemException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Накопитель одиночных createM2M, отправляющий их пачками через createM2MMultiple.
+ * Пачка отправляется, когда набрано maxBatchSize объектов или когда с момента добавления первого объекта пачки прошло maxDelay.
+ * Отправка выполняется в пуле потоков отправки, поэтому createM2M не ждет запроса, а поток таймера только передает пачки в пул.
+ * Каждый вызов получает свой future: с элементом ответа для созданного объекта,
+ * с {@link BatchItemException} если объект не создан, или с исключением, если не удалась вся пачка
+ */
+public class CreateM2MBatcher implements AutoCloseable {
+
+    protected static final String METACLASS_ATTR = "metaClass";
+    protected static final String ERROR_ATTR = "error";
+
+    protected static final Logger logger = LoggerFactory.getLogger(CreateM2MBatcher.class);
+
+    /**
+     * Количество одновременно отправляемых пачек в собственном пуле
+     */
+    protected static final int DEFAULT_PARALLELISM = 2;
+
+    /**
+     * Время, через которое простаивающие потоки собственного пула завершаются
+     */
+    protected static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    protected final Connector connector;
+    protected final int maxBatchSize;
+    protected final Duration maxDelay;
+    protected final ScheduledExecutorService scheduler;
+    protected final ExecutorService executor;
+    protected final boolean ownExecutor;
+    protected final Set<CompletableFuture<Void>> sending = ConcurrentHashMap.newKeySet();
+
+    protected final Object lock = new Object();
+    protected List<Pending> pending = new ArrayList<>();
+    protected ScheduledFuture<?> timer;
+    protected boolean closed;
+
+    /**
+     * Создать накопитель с собственным пулом отправки из daemon-потоков, пул закрывается вместе с накопителем
+     *
+     * @param connector    коннектор, через который отправляются пачки
+     * @param maxBatchSize максимальный размер пачки
+     * @param maxDelay     максимальное время ожидания первого объекта пачки до отправки
+     */
+    public CreateM2MBatcher(Connector connector, int maxBatchSize, Duration maxDelay) {
+        this(connector, maxBatchSize, maxDelay, newExecutor(DEFAULT_PARALLELISM), true);
+    }
+
+    /**
+     * Создать накопитель, отправляющий пачки в переданном пуле. Пул накопителем не закрывается
+     *
+     * @param connector    коннектор, через который отправляются пачки
+     * @param maxBatchSize максимальный размер пачки
+     * @param maxDelay     максимальное время ожидания первого объекта пачки до отправки
+     * @param executor     пул потоков отправки, его размер ограничивает количество одновременно отправляемых пачек
+     */
+    @SuppressWarnings("unused")
+    public CreateM2MBatcher(Connector connector, int maxBatchSize, Duration maxDelay, ExecutorService executor) {
+        this(connector, maxBatchSize, maxDelay, executor, false);
+    }
+
+    protected CreateM2MBatcher(Connector connector, int maxBatchSize, Duration maxDelay, ExecutorService executor, boolean ownExecutor) {
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("maxBatchSize must be positive");
+        this.connector = connector;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nsmp-create-m2m-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Добавить объект в пачку на создание
+     *
+     * @param metaClassCode fqn создаваемого объекта, например, serviceCall
+     * @param attributes    атрибуты создаваемого объекта
+     * @return future с элементом ответа createM2MMultiple для этого объекта (содержит UUID)
+     */
+    public CompletableFuture<HashMap<String, Object>> createM2M(String metaClassCode, Map<String, Object> attributes) {
+        Map<String, Object> object = new HashMap<>(attributes);
+        object.put(METACLASS_ATTR, metaClassCode);
+        Pending item = new Pending(object);
+        List<Pending> ready = null;
+        synchronized (lock) {
+            if (closed) throw new IllegalStateException("Batcher is closed");
+            pending.add(item);
+            if (pending.size() >= maxBatchSize) {
+                ready = takePending();
+            } else if (pending.size() == 1) {
+                timer = scheduler.schedule(this::flush, maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (ready != null) dispatch(ready);
+        return item.future;
+    }
+
+    /**
+     * Передать накопленные объекты на отправку, не дожидаясь заполнения пачки
+     */
+    public void flush() {
+        List<Pending> ready;
+        synchronized (lock) {
+            if (pending.isEmpty()) return;
+            ready = takePending();
+        }
+        dispatch(ready);
+    }
+
+    /**
+     * Отправить накопленные объекты, остановить таймер и дождаться отправки всех пачек.
+     * Новые объекты после закрытия не принимаются
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        flush();
+        scheduler.shutdown();
+        try {
+            //таймер мог забрать пачку до закрытия, ждем, пока он передаст ее в пул
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (CompletableFuture<Void> batch : sending) {
+            try {
+                batch.join();
+            } catch (CompletionException | CancellationException ignored) {
+                //future объектов пачки уже завершены в send
+            }
+        }
+        if (ownExecutor) executor.shutdown();
+    }
+
+    protected static ExecutorService newExecutor(int parallelism) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                parallelism,
+                parallelism,
+                IDLE_THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "nsmp-create-m2m-sender-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Передать пачку в пул отправки. Если пул не принимает задачи, future объектов пачки завершаются ошибкой
+     *
+     * @param batch пачка
+     */
+    protected void dispatch(List<Pending> batch) {
+        CompletableFuture<Void> future;
+        try {
+            future = CompletableFuture.runAsync(() -> send(batch), executor);
+        } catch (RejectedExecutionException e) {
+            for (Pending item : batch) item.future.completeExceptionally(e);
+            return;
+        }
+        sending.add(future);
+        future.whenComplete((result, e) -> sending.remove(future));
+    }
+
+    protected List<Pending> takePending() {
+        List<Pending> ready = pending;
+        pending = new ArrayList<>();
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        return ready;
+    }
+
+    /**
+     * Отправить пачку в потоке пула. Future объектов завершаются при любом исключении, в том числе Error,
+     * чтобы вызывающие не ждали их бесконечно
+     *
+     * @param batch пачка
+     */
+    protected void send(List<Pending> batch) {
+        try {
+            sendBatch(batch);
+        } catch (Throwable e) {
+            logger.debug("createM2MMultiple batch of {} failed", batch.size(), e);
+            for (Pending item : batch) item.future.completeExceptionally(e);
+            if (e instanceof Error error) throw error;
+        }
+    }
+
+    /**
+     * Отправить пачку и разложить элементы ответа по future.
+     * createM2MMultiple возвращает элементы в порядке переданных объектов
+     *
+     * @param batch пачка
+     */
+    protected void sendBatch(List<Pending> batch) {
+        List<Map<String, Object>> objects = new ArrayList<>(batch.size());
+        for (Pending item : batch) objects.add(item.object);
+        List<HashMap<String, Object>> results = connector.createM2MMultiple(objects);
+        if (results == null || results.size() != batch.size()) {
+            IllegalStateException e = new IllegalStateException(
+                    "createM2MMultiple returned " + (results == null ? 0 : results.size()) + " items for " + batch.size() + " objects"
+            );
+            for (Pending item : batch) item.future.completeExceptionally(e);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            HashMap<String, Object> result = results.get(i);
+            Object error = result.get(ERROR_ATTR);
+            if (error != null) batch.get(i).future.completeExceptionally(new BatchItemException(String.valueOf(error), result));
+            else batch.get(i).future.complete(result);
+        }
+    }
+
+    protected static class Pending {
+        protected final Map<String, Object> object;
+        protected final CompletableFuture<HashMap<String, Object>> future = new CompletableFuture<>();
+
+        protected Pending(Map<String, Object> object) {
+            this.object = object;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.kazantsev.nsmp.basic_api_connector.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Результат создания объектов частями. Все индексы - позиции объектов во входном списке
+ */
+public class CreateM2MMultipleResult {
+
+    protected static final String UUID_ATTR = "UUID";
+    protected static final String ERROR_ATTR = "error";
+
+    /**
+     * Элементы ответа в порядке входных объектов, null для объектов из неотправленных частей
+     */
+    public final List<HashMap<String, Object>> items;
+
+    /**
+     * UUID созданных объектов
+     */
+    public final Map<Integer, String> created = new TreeMap<>();
+
+    /**
+     * Ошибки создания отдельных объектов (поле error элемента ответа)
+     */
+    public final Map<Integer, String> errors = new TreeMap<>();
+
+    /**
+     * Исключения для объектов из частей, которые не удалось отправить
+     */
+    public final Map<Integer, RuntimeException> failures = new TreeMap<>();
+
+    public CreateM2MMultipleResult(int size) {
+        this.items = new ArrayList<>(Collections.nCopies(size, null));
+    }
+
+    /**
+     * Все объекты созданы
+     */
+    @SuppressWarnings("unused")
+    public synchronized boolean isComplete() {
+        return errors.isEmpty() && failures.isEmpty();
+    }
+
+    /**
+     * Разложить ответ на часть входного списка
+     *
+     * @param from       индекс первого объекта части
+     * @param chunkItems элементы ответа в порядке объектов части
+     */
+    public synchronized void merge(int from, List<HashMap<String, Object>> chunkItems) {
+        for (int i = 0; i < chunkItems.size(); i++) {
+            HashMap<String, Object> item = chunkItems.get(i);
+            int index = from + i;
+            items.set(index, item);
+            Object error = item.get(ERROR_ATTR);
+            if (error != null) errors.put(index, String.valueOf(error));
+            else if (item.get(UUID_ATTR) != null) created.put(index, String.valueOf(item.get(UUID_ATTR)));
+        }
+    }
+
+    /**
+     * Отметить часть входного списка как неотправленную
+     *
+     * @param from      индекс первого объекта части
+     * @param to        индекс после последнего объекта части
+     * @param exception причина
+     */
+    public synchronized void fail(int from, int to, RuntimeException exception) {
+        for (int index = from; index < to; index++) failures.put(index, exception);
+    }
+}
@@ -0,0 +1,49 @@
+package ru.kazantsev.nsmp.basic_api_connector.batch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Результат получения множества объектов
+ */
+public class GetManyResult {
+
+    /**
+     * Найденные объекты по UUID
+     */
+    public final Map<String, HashMap<String, Object>> objects = new LinkedHashMap<>();
+
+    /**
+     * UUID объектов, которые не найдены
+     */
+    public final List<String> missing = new ArrayList<>();
+
+    /**
+     * Ошибки получения отдельных объектов, ключ - UUID, значение - текст исключения на стороне NSMP
+     */
+    public final Map<String, String> errors = new LinkedHashMap<>();
+
+    /**
+     * Исключения для объектов из частей, скрипт которых не удалось выполнить или разобрать его результат
+     */
+    public final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+
+    /**
+     * Разложить результаты элементов скрипта получения объектов
+     *
+     * @param items результаты элементов
+     */
+    @SuppressWarnings("unchecked")
+    public void merge(List<HashMap<String, Object>> items) {
+        for (HashMap<String, Object> item : items) {
+            String uuid = String.valueOf(item.get(BulkScripts.UUID_FIELD));
+            Object error = item.get(BulkScripts.ERROR_FIELD);
+            if (error != null) errors.put(uuid, String.valueOf(error));
+            else if (Boolean.TRUE.equals(item.get("missing"))) missing.add(uuid);
+            else objects.put(uuid, new HashMap<>((Map<String, Object>) item.get("object")));
+        }
+    }
+}
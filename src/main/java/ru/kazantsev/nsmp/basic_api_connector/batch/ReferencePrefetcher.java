@@ -0,0 +1,212 @@
+package ru.kazantsev.nsmp.basic_api_connector.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.RequestContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Предзагрузка объектов, на которые ссылаются атрибуты уже полученных объектов.
+ * Для каждого пути (например, agreement или agreement.service) собираются различные UUID ссылок по всем объектам,
+ * они загружаются через get параллельно, по одному запросу на UUID, и подставляются вместо ссылок.
+ * Одинаковые ссылки заменяются одним и тем же экземпляром загруженного объекта.
+ * Ссылки, которые не удалось загрузить, остаются как есть, а UUID попадают в результат предзагрузки.
+ * Запросы выполняются в пуле потоков предзагрузчика, который переиспользуется всеми вызовами,
+ * поэтому предзагрузчик стоит создавать один раз на коннектор
+ */
+public class ReferencePrefetcher {
+
+    protected static final String UUID_ATTR = "UUID";
+    protected static final Logger logger = LoggerFactory.getLogger(ReferencePrefetcher.class);
+
+    /**
+     * Время, через которое простаивающие потоки собственного пула завершаются
+     */
+    protected static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    protected final Connector connector;
+    protected final ExecutorService executor;
+
+    /**
+     * Создать предзагрузчик с собственным пулом из daemon-потоков, простаивающие потоки завершаются
+     *
+     * @param connector   коннектор, через который загружаются объекты
+     * @param parallelism количество одновременных запросов get
+     */
+    public ReferencePrefetcher(Connector connector, int parallelism) {
+        this(connector, newExecutor(parallelism));
+    }
+
+    /**
+     * Создать предзагрузчик, выполняющий запросы в переданном пуле. Пул предзагрузчиком не закрывается
+     *
+     * @param connector коннектор, через который загружаются объекты
+     * @param executor  пул потоков для запросов get, его размер ограничивает количество одновременных запросов
+     */
+    public ReferencePrefetcher(Connector connector, ExecutorService executor) {
+        this.connector = connector;
+        this.executor = executor;
+    }
+
+    /**
+     * Загрузить и подставить объекты по ссылкам
+     *
+     * @param objects     объекты, в которых заменяются ссылки
+     * @param paths       пути ссылочных атрибутов, вложенные атрибуты через точку
+     * @param returnAttrs атрибуты загружаемых объектов, null - все. Атрибуты вложенных путей добавляются автоматически
+     * @return исключения загрузки по UUID, пустой Map если все ссылки загружены
+     */
+    public Map<String, RuntimeException> prefetch(
+            Collection<? extends Map<String, Object>> objects,
+            Collection<String> paths,
+            List<String> returnAttrs
+    ) {
+        List<List<String>> segments = new ArrayList<>();
+        for (String path : paths) segments.add(List.of(path.split("\\.")));
+        Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        if (objects.isEmpty() || segments.isEmpty()) return failures;
+        prefetchLevel(new ArrayList<>(objects), segments, returnAttrs, new HashMap<>(), failures, executor);
+        return failures;
+    }
+
+    protected static ExecutorService newExecutor(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                parallelism,
+                parallelism,
+                IDLE_THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "nsmp-prefetch-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Обработать первый сегмент путей и перейти к следующим сегментам в загруженных объектах
+     */
+    protected void prefetchLevel(
+            List<Map<String, Object>> holders,
+            List<List<String>> paths,
+            List<String> returnAttrs,
+            Map<String, HashMap<String, Object>> resolved,
+            Map<String, RuntimeException> failures,
+            ExecutorService executor
+    ) {
+        Map<String, List<List<String>>> restByAttr = new LinkedHashMap<>();
+        for (List<String> path : paths) {
+            restByAttr.computeIfAbsent(path.get(0), key -> new ArrayList<>());
+            if (path.size() > 1) restByAttr.get(path.get(0)).add(path.subList(1, path.size()));
+        }
+        for (Map.Entry<String, List<List<String>>> entry : restByAttr.entrySet()) {
+            String attr = entry.getKey();
+            List<List<String>> rest = entry.getValue();
+            Set<String> uuids = new LinkedHashSet<>();
+            for (Map<String, Object> holder : holders) collectUuids(holder.get(attr), uuids);
+            uuids.removeAll(resolved.keySet());
+            uuids.removeAll(failures.keySet());
+            List<String> attrs = returnAttrs;
+            if (attrs != null && !rest.isEmpty()) {
+                Set<String> withNested = new LinkedHashSet<>(attrs);
+                for (List<String> path : rest) withNested.add(path.get(0));
+                attrs = new ArrayList<>(withNested);
+            }
+            resolve(uuids, attrs, resolved, failures, executor);
+            //один и тот же загруженный объект может быть подставлен во многие места, обрабатывается он один раз
+            Set<Map<String, Object>> next = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Map<String, Object> holder : holders) {
+                if (!holder.containsKey(attr)) continue;
+                holder.put(attr, replace(holder.get(attr), resolved, next));
+            }
+            if (!rest.isEmpty() && !next.isEmpty()) prefetchLevel(new ArrayList<>(next), rest, returnAttrs, resolved, failures, executor);
+        }
+    }
+
+    /**
+     * Загрузить объекты параллельно
+     */
+    protected void resolve(
+            Set<String> uuids,
+            List<String> returnAttrs,
+            Map<String, HashMap<String, Object>> resolved,
+            Map<String, RuntimeException> failures,
+            ExecutorService executor
+    ) {
+        Map<String, Future<HashMap<String, Object>>> futures = new LinkedHashMap<>();
+        for (String uuid : uuids) futures.put(uuid, executor.submit(RequestContext.wrap(() -> connector.get(uuid, returnAttrs))));
+        for (Map.Entry<String, Future<HashMap<String, Object>>> entry : futures.entrySet()) {
+            try {
+                resolved.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RequestProcessException(e);
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException runtimeException
+                        ? runtimeException
+                        : new RequestProcessException(e.getCause());
+                logger.warn("Prefetch of \"{}\" failed, reference left unresolved", entry.getKey(), cause);
+                failures.put(entry.getKey(), cause);
+            }
+        }
+    }
+
+    protected static void collectUuids(Object value, Set<String> uuids) {
+        if (value instanceof Collection<?> collection) {
+            for (Object item : collection) collectUuids(item, uuids);
+            return;
+        }
+        String uuid = uuidOf(value);
+        if (uuid != null) uuids.add(uuid);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static Object replace(Object value, Map<String, HashMap<String, Object>> resolved, Set<Map<String, Object>> next) {
+        if (value instanceof Collection<?> collection) {
+            List<Object> replaced = new ArrayList<>(collection.size());
+            for (Object item : collection) replaced.add(replace(item, resolved, next));
+            return replaced;
+        }
+        String uuid = uuidOf(value);
+        HashMap<String, Object> object = uuid != null ? resolved.get(uuid) : null;
+        if (object != null) {
+            next.add(object);
+            return object;
+        }
+        if (value instanceof Map<?, ?> map) next.add((Map<String, Object>) map);
+        return value;
+    }
+
+    /**
+     * UUID ссылки: Map с атрибутом UUID или строка вида metaClass$id
+     */
+    protected static String uuidOf(Object value) {
+        if (value instanceof Map<?, ?> map && map.get(UUID_ATTR) != null) return map.get(UUID_ATTR).toString();
+        if (value instanceof String string && string.indexOf('$') > 0) return string;
+        return null;
+    }
+}
@@ -0,0 +1,201 @@
+package ru.kazantsev.nsmp.basic_api_connector.batch;
+
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Отложенное редактирование объектов с объединением правок.
+ * Правки одного объекта копятся window с момента первой правки, атрибуты объединяются (для атрибута побеждает последняя правка),
+ * после чего отправляется один edit на объект. Если среди объединенных правок есть editM2M, вместо edit отправляется
+ * один editM2M, и его ответ (весь объект) получают все вызовы editM2M, попавшие в него.
+ * Для одного объекта одновременно выполняется не больше одного запроса, поэтому правки применяются в порядке поступления.
+ * До отправки правки не видны ни через get, ни другим коннекторам
+ */
+public class WriteBehindEditor implements AutoCloseable {
+
+    protected final Connector connector;
+    protected final Duration window;
+    protected final ScheduledExecutorService scheduler;
+
+    protected final Object lock = new Object();
+    protected final Map<String, Pending> pending = new HashMap<>();
+    protected final Set<String> inFlight = new HashSet<>();
+    protected boolean closed;
+
+    protected final LongAdder edits = new LongAdder();
+    protected final LongAdder requests = new LongAdder();
+
+    /**
+     * @param connector коннектор, через который отправляются правки
+     * @param window    время накопления правок объекта
+     * @param threads   количество потоков отправки
+     */
+    public WriteBehindEditor(Connector connector, Duration window, int threads) {
+        if (threads <= 0) throw new IllegalArgumentException("threads must be positive");
+        this.connector = connector;
+        this.window = window;
+        AtomicInteger counter = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "nsmp-write-behind-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Добавить правку объекта
+     *
+     * @param objectUuid uuid изменяемого объекта
+     * @param attributes изменяемые атрибуты
+     * @return future, завершаемый после отправки edit, в который попала правка
+     */
+    public CompletableFuture<Void> edit(String objectUuid, Map<String, Object> attributes) {
+        return add(objectUuid, attributes, false).thenApply(response -> null);
+    }
+
+    /**
+     * Добавить правку объекта, ответ на которую нужен вызывающему
+     *
+     * @param objectUuid uuid изменяемого объекта
+     * @param attributes изменяемые атрибуты
+     * @return future с ответом editM2M (весь объект), в который попала правка
+     */
+    @SuppressWarnings("unused")
+    public CompletableFuture<HashMap<String, Object>> editM2M(String objectUuid, Map<String, Object> attributes) {
+        return add(objectUuid, attributes, true).copy();
+    }
+
+    protected CompletableFuture<HashMap<String, Object>> add(String objectUuid, Map<String, Object> attributes, boolean m2m) {
+        synchronized (lock) {
+            if (closed) throw new IllegalStateException("Editor is closed");
+            edits.increment();
+            Pending item = pending.get(objectUuid);
+            if (item == null) {
+                Pending created = new Pending();
+                item = created;
+                pending.put(objectUuid, created);
+                scheduler.schedule(() -> due(objectUuid, created), window.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            item.attributes.putAll(attributes);
+            if (m2m) item.m2m = true;
+            return item.future;
+        }
+    }
+
+    /**
+     * Отправить все накопленные правки и дождаться их отправки
+     */
+    public void flush() {
+        List<CompletableFuture<HashMap<String, Object>>> futures = new ArrayList<>();
+        synchronized (lock) {
+            for (Map.Entry<String, Pending> entry : new ArrayList<>(pending.entrySet())) {
+                String objectUuid = entry.getKey();
+                Pending item = entry.getValue();
+                futures.add(item.future);
+                item.due = true;
+                if (!inFlight.contains(objectUuid)) {
+                    pending.remove(objectUuid);
+                    inFlight.add(objectUuid);
+                    scheduler.execute(() -> send(objectUuid, item));
+                }
+            }
+        }
+        for (CompletableFuture<HashMap<String, Object>> future : futures) {
+            future.exceptionally(e -> null).join();
+        }
+    }
+
+    /**
+     * Отправить накопленные правки и остановить потоки отправки. Новые правки после закрытия не принимаются
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        flush();
+        scheduler.shutdown();
+    }
+
+    /**
+     * Количество принятых правок
+     */
+    @SuppressWarnings("unused")
+    public long getEdits() {
+        return edits.sum();
+    }
+
+    /**
+     * Количество отправленных edit и editM2M
+     */
+    @SuppressWarnings("unused")
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Окно накопления правок объекта истекло
+     */
+    protected void due(String objectUuid, Pending item) {
+        synchronized (lock) {
+            if (pending.get(objectUuid) != item) return;
+            item.due = true;
+            //отправится потоком, который сейчас отправляет предыдущие правки объекта
+            if (inFlight.contains(objectUuid)) return;
+            pending.remove(objectUuid);
+            inFlight.add(objectUuid);
+        }
+        send(objectUuid, item);
+    }
+
+    /**
+     * Отправить правки объекта, затем правки, накопившиеся за время отправки, если их окно уже истекло
+     */
+    protected void send(String objectUuid, Pending item) {
+        Pending current = item;
+        while (current != null) {
+            try {
+                requests.increment();
+                if (current.m2m) {
+                    current.future.complete(connector.editM2M(objectUuid, current.attributes));
+                } else {
+                    connector.edit(objectUuid, current.attributes);
+                    current.future.complete(null);
+                }
+            } catch (RuntimeException e) {
+                current.future.completeExceptionally(e);
+            }
+            synchronized (lock) {
+                Pending next = pending.get(objectUuid);
+                if (next != null && next.due) {
+                    pending.remove(objectUuid);
+                    current = next;
+                } else {
+                    inFlight.remove(objectUuid);
+                    current = null;
+                }
+            }
+        }
+    }
+
+    protected static class Pending {
+        protected final Map<String, Object> attributes = new LinkedHashMap<>();
+        protected final CompletableFuture<HashMap<String, Object>> future = new CompletableFuture<>();
+        protected boolean due;
+        protected boolean m2m;
+    }
+}
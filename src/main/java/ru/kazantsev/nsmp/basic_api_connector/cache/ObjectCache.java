@@ -0,0 +1,257 @@
+package ru.kazantsev.nsmp.basic_api_connector.cache;
+
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Кеш ответов метода get в памяти.
+ * Хранит тело ответа (JSON) по ключу uuid + запрошенные атрибуты, поэтому каждый вызов получает собственную копию объекта.
+ * Вытеснение - LRU при превышении количества записей или суммарного размера тел, записи старше ttl не выдаются.
+ * Кеш подключается к коннектору через {@link Connector#setObjectCache(ObjectCache)},
+ * после чего edit, editM2M, delete и addFile этого коннектора сбрасывают записи измененного объекта.
+ * Изменения, сделанные в обход коннектора, кеш не видит - их нужно ограничивать ttl
+ */
+public class ObjectCache {
+
+    protected static final String ALL_ATTRS = "*";
+
+    /**
+     * Записи в порядке доступа, первая - давно не использованная
+     */
+    protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Ключи записей по uuid объекта
+     */
+    protected final Map<String, Set<String>> keysByUuid = new HashMap<>();
+
+    protected final int maxEntries;
+    protected Long maxBytes;
+    protected Duration ttl;
+
+    protected long bytes;
+    protected long hits;
+    protected long misses;
+    protected long evictions;
+
+    /**
+     * Счетчик сбросов, нужен чтобы не положить в кеш ответ, запрошенный до изменения объекта
+     */
+    protected long invalidations;
+
+    /**
+     * Создать кеш
+     *
+     * @param maxEntries максимальное количество записей
+     */
+    public ObjectCache(int maxEntries) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive");
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Установить максимальный суммарный размер тел ответов
+     *
+     * @param maxBytes размер в байтах, null - без ограничения
+     */
+    @SuppressWarnings("unused")
+    public synchronized void setMaxBytes(Long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Установить время жизни записи
+     *
+     * @param ttl время жизни, null - без ограничения
+     */
+    @SuppressWarnings("unused")
+    public synchronized void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Собрать ключ записи. Порядок и повторы атрибутов не важны
+     *
+     * @param uuid  uuid объекта
+     * @param attrs запрошенные атрибуты, null - весь объект
+     * @return ключ
+     */
+    public static String key(String uuid, List<String> attrs) {
+        String attrsPart = attrs == null ? ALL_ATTRS : String.join(",", new TreeSet<>(attrs));
+        return uuid + '\u0000' + attrsPart;
+    }
+
+    /**
+     * Получить тело ответа из кеша
+     *
+     * @param uuid  uuid объекта
+     * @param attrs запрошенные атрибуты, null - весь объект
+     * @return тело ответа или null, если записи нет или она устарела
+     */
+    public synchronized byte[] get(String uuid, List<String> attrs) {
+        String key = key(uuid, attrs);
+        Entry entry = entries.get(key);
+        if (entry != null && isExpired(entry)) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.body;
+    }
+
+    /**
+     * Получить метку для последующего {@link #put}. Берется до отправки запроса
+     *
+     * @return метка
+     */
+    public synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Положить тело ответа в кеш.
+     * Ответ отбрасывается, если после получения метки кеш сбрасывался: он мог быть запрошен до изменения объекта
+     *
+     * @param uuid  uuid объекта
+     * @param attrs запрошенные атрибуты, null - весь объект
+     * @param body  тело ответа
+     * @param stamp метка, полученная через {@link #stamp()} до отправки запроса
+     */
+    public synchronized void put(String uuid, List<String> attrs, byte[] body, long stamp) {
+        if (stamp != invalidations) return;
+        if (maxBytes != null && body.length > maxBytes) return;
+        String key = key(uuid, attrs);
+        remove(key);
+        entries.put(key, new Entry(uuid, body, now()));
+        keysByUuid.computeIfAbsent(uuid, k -> new HashSet<>()).add(key);
+        bytes += body.length;
+        evict();
+    }
+
+    /**
+     * Сбросить все записи объекта
+     *
+     * @param uuid uuid объекта
+     */
+    public synchronized void invalidate(String uuid) {
+        invalidations++;
+        Set<String> keys = keysByUuid.remove(uuid);
+        if (keys == null) return;
+        for (String key : keys) {
+            Entry entry = entries.remove(key);
+            if (entry != null) bytes -= entry.body.length;
+        }
+    }
+
+    /**
+     * Сбросить весь кеш
+     */
+    @SuppressWarnings("unused")
+    public synchronized void invalidateAll() {
+        invalidations++;
+        entries.clear();
+        keysByUuid.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Количество попаданий
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Количество промахов, включая устаревшие записи
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Количество записей, вытесненных по размеру кеша
+     */
+    @SuppressWarnings("unused")
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Текущее количество записей
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Текущий суммарный размер тел ответов в байтах
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Текущее время в наносекундах, используется для ttl
+     */
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    protected boolean isExpired(Entry entry) {
+        return ttl != null && now() - entry.createdAt >= ttl.toNanos();
+    }
+
+    protected void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) return;
+        bytes -= entry.body.length;
+        Set<String> keys = keysByUuid.get(entry.uuid);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) keysByUuid.remove(entry.uuid);
+        }
+    }
+
+    protected void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || (maxBytes != null && bytes > maxBytes))) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            String key = eldest.getKey();
+            Entry entry = eldest.getValue();
+            iterator.remove();
+            bytes -= entry.body.length;
+            Set<String> keys = keysByUuid.get(entry.uuid);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) keysByUuid.remove(entry.uuid);
+            }
+            evictions++;
+        }
+    }
+
+    protected static class Entry {
+        protected final String uuid;
+        protected final byte[] body;
+        protected final long createdAt;
+
+        protected Entry(String uuid, byte[] body, long createdAt) {
+            this.uuid = uuid;
+            this.body = body;
+            this.createdAt = createdAt;
+        }
+    }
+}
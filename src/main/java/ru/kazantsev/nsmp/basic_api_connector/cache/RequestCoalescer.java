@@ -0,0 +1,150 @@
+package ru.kazantsev.nsmp.basic_api_connector.cache;
+
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.CancellationToken;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.RequestContext;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одинаковых одновременных запросов (single-flight).
+ * Пока запрос с некоторым ключом выполняется, остальные вызовы с тем же ключом не отправляют свой запрос,
+ * а дожидаются результата (или исключения) первого.
+ * Результат отдается всем ожидающим один и тот же, поэтому объединять можно только запросы,
+ * результат которых неизменяем или копируется каждым вызовом.
+ * Ожидающие вызовы соблюдают срок выполнения и токен отмены своего {@link RequestContext}.
+ * Если первый запрос отменен или не уложился в срок своего вызова, ожидающий вызов не получает эту ошибку,
+ * а выполняет запрос сам.
+ * Подключается к коннектору через {@link Connector#setRequestCoalescer(RequestCoalescer)}
+ */
+public class RequestCoalescer {
+
+    /**
+     * Интервал проверки токена отмены ожидающим вызовом
+     */
+    protected static final long CANCELLATION_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    protected final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    protected final LongAdder executed = new LongAdder();
+    protected final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Выполнить запрос или присоединиться к уже выполняющемуся запросу с тем же ключом
+     *
+     * @param operation операция (PATH_SEGMENT) для сообщений об ошибках, ключ в сообщения не попадает
+     * @param key       ключ запроса, может содержать uri с accessKey и тело запроса
+     * @param supplier  выполнение запроса
+     * @param <T>       тип результата
+     * @return результат запроса
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, String key, Supplier<T> supplier) {
+        while (true) {
+            CompletableFuture<Object> own = new CompletableFuture<>();
+            CompletableFuture<Object> existing = inFlight.putIfAbsent(key, own);
+            if (existing == null) return lead(key, own, supplier);
+            coalesced.increment();
+            try {
+                return (T) await(operation, existing);
+            } catch (RequestCancelledException | DeadlineExceededException e) {
+                if (isOwnFailure()) throw e;
+                //отмена или истекший срок чужого вызова, запрос выполняется заново
+            }
+        }
+    }
+
+    /**
+     * Отменен ли токен или истек ли срок контекста этого вызова
+     */
+    protected static boolean isOwnFailure() {
+        RequestContext context = RequestContext.current();
+        CancellationToken token = context.getCancellationToken();
+        return context.isExpired() || (token != null && token.isCancelled());
+    }
+
+    /**
+     * Выполнить запрос первым и передать результат ожидающим.
+     * Ключ удаляется до передачи результата, чтобы повторный вызов ожидающего не получил завершенный запрос
+     */
+    protected <T> T lead(String key, CompletableFuture<Object> own, Supplier<T> supplier) {
+        executed.increment();
+        T result;
+        try {
+            result = supplier.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, own);
+            own.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, own);
+        own.complete(result);
+        return result;
+    }
+
+    /**
+     * Количество запросов, отправленных на сервер
+     */
+    @SuppressWarnings("unused")
+    public long getExecuted() {
+        return executed.sum();
+    }
+
+    /**
+     * Количество вызовов, получивших результат чужого запроса
+     */
+    @SuppressWarnings("unused")
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Количество выполняющихся в данный момент запросов
+     */
+    @SuppressWarnings("unused")
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Дождаться результата чужого запроса, соблюдая срок выполнения и токен отмены своего контекста
+     *
+     * @throws RequestCancelledException если отменен токен этого вызова или запрос, которого он ждал
+     * @throws DeadlineExceededException если истек срок этого вызова или запроса, которого он ждал
+     */
+    protected static Object await(String operation, CompletableFuture<Object> future) {
+        RequestContext context = RequestContext.current();
+        boolean cancellable = context.getCancellationToken() != null;
+        try {
+            while (true) {
+                context.check(operation);
+                Duration remaining = context.getRemaining();
+                if (remaining == null && !cancellable) return future.get();
+                long waitNanos = remaining != null ? Math.max(1, remaining.toNanos()) : Long.MAX_VALUE;
+                if (cancellable) waitNanos = Math.min(waitNanos, CANCELLATION_POLL_NANOS);
+                try {
+                    return future.get(waitNanos, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    //проверка срока и отмены на следующей итерации
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestProcessException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            if (cause instanceof Error error) throw error;
+            throw new RequestProcessException(cause);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ru.kazantsev.nsmp.basic_api_connector.dto;
+
+/** DTO с описанием закешированной на диске метаинформации инсталляции */
+public class MetainfoCacheEntryDto {
+    /** Идентификатор инсталляции */
+    public String installationId;
+    /** Версия приложения инсталляции на момент выгрузки */
+    public String version;
+    /** SHA-256 несжатого xml в hex, он же имя файла с данными */
+    public String sha256;
+    /** Размер несжатого xml в байтах */
+    public Long size;
+    /** Размер сжатого файла в байтах */
+    public Long compressedSize;
+    /** Время выгрузки, мс */
+    public Long createdAt;
+
+    @SuppressWarnings("unused")
+    public MetainfoCacheEntryDto() {}
+}
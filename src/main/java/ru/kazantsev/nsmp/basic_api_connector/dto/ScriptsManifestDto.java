@@ -0,0 +1,35 @@
+package ru.kazantsev.nsmp.basic_api_connector.dto;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/** DTO манифеста локального зеркала скриптов инсталляции */
+public class ScriptsManifestDto {
+    /** Записи манифеста, ключ - путь файла внутри архива */
+    public Map<String, Entry> entries = new TreeMap<>();
+
+    @SuppressWarnings("unused")
+    public ScriptsManifestDto() {}
+
+    /** Сведения о файле, извлеченном из архива */
+    public static class Entry {
+        /** SHA-256 содержимого в hex */
+        public String sha256;
+        /** CRC32 содержимого, как его пишет zip */
+        public Long crc;
+        /** Размер содержимого в байтах */
+        public Long size;
+        /** Время последнего изменения локального файла после записи, мс */
+        public Long lastModified;
+
+        @SuppressWarnings("unused")
+        public Entry() {}
+
+        public Entry(String sha256, Long crc, Long size, Long lastModified) {
+            this.sha256 = sha256;
+            this.crc = crc;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.kazantsev.nsmp.basic_api_connector.exception;
+
+import java.util.Map;
+
+/**
+ * Ошибка обработки одного элемента пакетного запроса, при этом остальные элементы пакета могли быть обработаны
+ */
+public class BatchItemException extends RuntimeException {
+
+    /**
+     * Элемент ответа, содержащий ошибку
+     */
+    protected final Map<String, Object> item;
+
+    public BatchItemException(String error, Map<String, Object> item) {
+        super("Batch item failed: " + error);
+        this.item = item;
+    }
+
+    /**
+     * Получить элемент ответа, содержащий ошибку
+     *
+     * @return элемент ответа, обычно переданные атрибуты и поле error
+     */
+    @SuppressWarnings("unused")
+    public Map<String, Object> getItem() {
+        return item;
+    }
+}
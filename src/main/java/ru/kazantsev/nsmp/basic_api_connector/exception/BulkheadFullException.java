@@ -0,0 +1,26 @@
+package ru.kazantsev.nsmp.basic_api_connector.exception;
+
+import ru.kazantsev.nsmp.basic_api_connector.resilience.OperationClass;
+
+/**
+ * Исключение, которое выбрасывается, если запрос не дождался свободного места в квоте своего класса операций
+ */
+public class BulkheadFullException extends RuntimeException {
+
+    protected final OperationClass operationClass;
+
+    public BulkheadFullException(OperationClass operationClass, int quota) {
+        super("Bulkhead " + operationClass + " is full: " + quota + " concurrent requests");
+        this.operationClass = operationClass;
+    }
+
+    /**
+     * Получить класс операции, квота которого исчерпана
+     *
+     * @return класс операции
+     */
+    @SuppressWarnings("unused")
+    public OperationClass getOperationClass() {
+        return operationClass;
+    }
+}
@@ -0,0 +1,26 @@
+package ru.kazantsev.nsmp.basic_api_connector.exception;
+
+import java.time.Duration;
+
+/**
+ * Исключение, которое выбрасывается вместо отправки запроса, пока предохранитель инсталляции разомкнут
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    protected final Duration remaining;
+
+    public CircuitOpenException(Duration remaining) {
+        super("Circuit breaker is open, requests are rejected for another " + remaining.toMillis() + " ms");
+        this.remaining = remaining;
+    }
+
+    /**
+     * Получить время до следующей пробной попытки
+     *
+     * @return время до пробной попытки, 0 если пробные запросы уже выполняются
+     */
+    @SuppressWarnings("unused")
+    public Duration getRemaining() {
+        return remaining;
+    }
+}
@@ -0,0 +1,24 @@
+package ru.kazantsev.nsmp.basic_api_connector.exception;
+
+/**
+ * Исключение, которое выбрасывается, если запрос не дождался свободного места в ограничителе одновременных запросов
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    protected final int limit;
+
+    public ConcurrencyLimitExceededException(int limit) {
+        super("Concurrency limit of " + limit + " in-flight requests reached");
+        this.limit = limit;
+    }
+
+    /**
+     * Получить ограничение на момент отказа
+     *
+     * @return количество одновременных запросов
+     */
+    @SuppressWarnings("unused")
+    public int getLimit() {
+        return limit;
+    }
+}
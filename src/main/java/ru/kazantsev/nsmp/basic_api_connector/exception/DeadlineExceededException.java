@@ -0,0 +1,16 @@
+package ru.kazantsev.nsmp.basic_api_connector.exception;
+
+/**
+ * Исключение, которое выбрасывается вместо запроса, если срок выполнения из контекста запросов уже истек,
+ * или если ответ не пришел до срока выполнения
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String operation) {
+        super("Deadline exceeded before " + operation + " request");
+    }
+
+    public DeadlineExceededException(String operation, Throwable cause) {
+        super("Deadline exceeded during " + operation + " request", cause);
+    }
+}
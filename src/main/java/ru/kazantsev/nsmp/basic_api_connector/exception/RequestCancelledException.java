@@ -0,0 +1,15 @@
+package ru.kazantsev.nsmp.basic_api_connector.exception;
+
+/**
+ * Исключение, которое выбрасывается, если запрос был отменен до получения ответа
+ */
+public class RequestCancelledException extends RuntimeException {
+
+    public RequestCancelledException() {
+        super("Request was cancelled");
+    }
+
+    public RequestCancelledException(Throwable cause) {
+        super("Request was cancelled", cause);
+    }
+}
@@ -56,6 +56,20 @@ public final class ResponseSnapshot {
         return headers;
     }
 
+    /**
+     * Получить значение первого заголовка с указанным именем без учета регистра
+     *
+     * @param name имя заголовка
+     * @return значение заголовка, null если заголовка нет
+     */
+    public String getHeader(String name) {
+        if (headers == null) return null;
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) return header.getValue();
+        }
+        return null;
+    }
+
     public String getContentType() {
         return contentType;
     }
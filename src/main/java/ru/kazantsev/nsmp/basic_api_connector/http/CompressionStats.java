@@ -0,0 +1,117 @@
+package ru.kazantsev.nsmp.basic_api_connector.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Накопительная статистика сжатия по операциям коннектора
+ */
+public class CompressionStats {
+
+    private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+
+    /**
+     * Учесть завершенный запрос
+     *
+     * @param stats счетчики запроса
+     */
+    public void record(TransferStats stats) {
+        operations.computeIfAbsent(stats.getOperation(), key -> new OperationStats()).record(stats);
+    }
+
+    /**
+     * Получить статистику по операциям
+     *
+     * @return статистика, ключ - операция (PATH_SEGMENT)
+     */
+    public Map<String, OperationStats> getOperations() {
+        return Collections.unmodifiableMap(new TreeMap<>(operations));
+    }
+
+    /**
+     * Сбросить статистику
+     */
+    @SuppressWarnings("unused")
+    public void reset() {
+        operations.clear();
+    }
+
+    /**
+     * Статистика сжатия одной операции
+     */
+    @SuppressWarnings("unused")
+    public static class OperationStats {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder compressedRequests = new LongAdder();
+        private final LongAdder compressedResponses = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder requestWireBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LongAdder responseWireBytes = new LongAdder();
+
+        void record(TransferStats stats) {
+            requests.increment();
+            if (stats.getRequestEncoding() != null) compressedRequests.increment();
+            if (stats.getResponseEncoding() != null) compressedResponses.increment();
+            if (stats.getRequestBytes() > 0 && stats.getRequestWireBytes() > 0) {
+                requestBytes.add(stats.getRequestBytes());
+                requestWireBytes.add(stats.getRequestWireBytes());
+            }
+            responseBytes.add(stats.getResponseBytes());
+            responseWireBytes.add(stats.getResponseWireBytes());
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getCompressedRequests() {
+            return compressedRequests.sum();
+        }
+
+        public long getCompressedResponses() {
+            return compressedResponses.sum();
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.sum();
+        }
+
+        public long getRequestWireBytes() {
+            return requestWireBytes.sum();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.sum();
+        }
+
+        public long getResponseWireBytes() {
+            return responseWireBytes.sum();
+        }
+
+        /**
+         * Общая степень сжатия запросов операции
+         */
+        public double getRequestCompressionRatio() {
+            long wire = getRequestWireBytes();
+            return wire > 0 ? (double) getRequestBytes() / wire : 1;
+        }
+
+        /**
+         * Общая степень сжатия ответов операции
+         */
+        public double getResponseCompressionRatio() {
+            long wire = getResponseWireBytes();
+            return wire > 0 ? (double) getResponseBytes() / wire : 1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests: %d, request x%.2f, response x%.2f",
+                    getRequests(), getRequestCompressionRatio(), getResponseCompressionRatio());
+        }
+    }
+}
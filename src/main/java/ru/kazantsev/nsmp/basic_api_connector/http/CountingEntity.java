@@ -0,0 +1,36 @@
+package ru.kazantsev.nsmp.basic_api_connector.http;
+
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Обертка над телом запроса, считающая байты, записанные в соединение.
+ * Нужна для тел без заранее известной длины, например сжатых gzip на лету
+ */
+public class CountingEntity extends HttpEntityWrapper {
+
+    private volatile long writtenBytes = -1;
+
+    public CountingEntity(HttpEntity wrappedEntity) {
+        super(wrappedEntity);
+    }
+
+    /**
+     * Размер тела, записанного в соединение при последней отправке
+     *
+     * @return количество отправленных байтов или -1, если тело еще не отправлялось
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        long[] written = new long[1];
+        super.writeTo(new CountingOutputStream(outputStream, bytes -> written[0] += bytes));
+        writtenBytes = written[0];
+    }
+}
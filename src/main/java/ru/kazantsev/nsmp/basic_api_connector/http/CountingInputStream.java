@@ -0,0 +1,49 @@
+package ru.kazantsev.nsmp.basic_api_connector.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Поток, сообщающий о количестве прочитанных байтов
+ */
+public class CountingInputStream extends FilterInputStream {
+
+    private final LongConsumer counter;
+
+    /**
+     * @param inputStream исходный поток
+     * @param counter     получатель количества байтов при каждом чтении
+     */
+    public CountingInputStream(InputStream inputStream, LongConsumer counter) {
+        super(inputStream);
+        this.counter = counter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value != -1) counter.accept(1);
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) counter.accept(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0) counter.accept(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,35 @@
+package ru.kazantsev.nsmp.basic_api_connector.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Поток, сообщающий о количестве записанных байтов
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+    private final LongConsumer counter;
+
+    /**
+     * @param outputStream исходный поток
+     * @param counter      получатель количества байтов при каждой записи
+     */
+    public CountingOutputStream(OutputStream outputStream, LongConsumer counter) {
+        super(outputStream);
+        this.counter = counter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        counter.accept(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        counter.accept(len);
+    }
+}
@@ -0,0 +1,122 @@
+package ru.kazantsev.nsmp.basic_api_connector.http;
+
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Обертка над телом ответа, распаковывающая gzip/deflate по мере чтения
+ * и подсчитывающая переданные и распакованные байты в {@link TransferStats}.
+ * Несжатое тело отдается как есть, считаются только байты
+ */
+public class DecodingResponseEntity extends HttpEntityWrapper {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private final String encoding;
+    private final TransferStats stats;
+    private InputStream content;
+
+    /**
+     * @param wrappedEntity исходное тело ответа
+     * @param encoding      нормализованное кодирование (gzip, deflate) или null, если тело не сжато
+     * @param stats         счетчики запроса
+     */
+    public DecodingResponseEntity(HttpEntity wrappedEntity, String encoding, TransferStats stats) {
+        super(wrappedEntity);
+        this.encoding = encoding;
+        this.stats = stats;
+    }
+
+    /**
+     * Привести значение заголовка Content-Encoding к поддерживаемому кодированию
+     *
+     * @param contentEncoding значение заголовка
+     * @return gzip, deflate или null для несжатого тела
+     * @throws IOException если кодирование не поддерживается
+     */
+    public static String normalizeEncoding(String contentEncoding) throws IOException {
+        if (contentEncoding == null) return null;
+        String value = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        return switch (value) {
+            case "", "identity" -> null;
+            case "gzip", "x-gzip" -> GZIP;
+            case "deflate" -> DEFLATE;
+            default -> throw new IOException("Unsupported response content encoding: " + contentEncoding);
+        };
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        if (content != null) return content;
+        if (encoding == null || super.getContentLength() == 0) {
+            content = new CountingInputStream(super.getContent(), bytes -> {
+                stats.addResponseWireBytes(bytes);
+                stats.addResponseBytes(bytes);
+            });
+        } else {
+            InputStream wire = new CountingInputStream(super.getContent(), stats::addResponseWireBytes);
+            InputStream decoded = GZIP.equals(encoding) ? new GZIPInputStream(wire, 8192) : inflate(wire);
+            content = new CountingInputStream(decoded, stats::addResponseBytes);
+        }
+        return content;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return encoding == null ? super.getContentLength() : -1;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        try (InputStream inputStream = getContent()) {
+            inputStream.transferTo(outputStream);
+        }
+    }
+
+    /**
+     * Распаковать deflate. Серверы отдают его как в zlib обертке, так и "сырым",
+     * поэтому формат определяется по заголовку zlib
+     *
+     * @param wire поток сжатых данных
+     * @return поток распакованных данных
+     */
+    protected static InputStream inflate(InputStream wire) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(wire, 2);
+        int first = pushback.read();
+        int second = first != -1 ? pushback.read() : -1;
+        if (second != -1) pushback.unread(second);
+        if (first != -1) pushback.unread(first);
+        boolean zlib = first != -1 && second != -1 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+        Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(pushback, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
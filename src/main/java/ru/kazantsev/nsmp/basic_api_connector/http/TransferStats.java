@@ -0,0 +1,127 @@
+package ru.kazantsev.nsmp.basic_api_connector.http;
+
+/**
+ * Объем данных, переданных в рамках одного запроса, и код ответа.
+ * Размеры "wire" - то, что ушло/пришло по сети (после сжатия), без приставки - несжатые данные.
+ * Значение -1 означает, что размер неизвестен
+ */
+@SuppressWarnings("unused")
+public class TransferStats {
+
+    private final String operation;
+    private long requestBytes = -1;
+    private long requestWireBytes = -1;
+    private long responseBytes;
+    private long responseWireBytes;
+    private String requestEncoding;
+    private String responseEncoding;
+    private int status = -1;
+
+    public TransferStats(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Операция (PATH_SEGMENT метода API)
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public void setRequestBytes(long requestBytes) {
+        this.requestBytes = requestBytes;
+    }
+
+    public long getRequestWireBytes() {
+        return requestWireBytes;
+    }
+
+    public void setRequestWireBytes(long requestWireBytes) {
+        this.requestWireBytes = requestWireBytes;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    public void addResponseBytes(long bytes) {
+        this.responseBytes += bytes;
+    }
+
+    public long getResponseWireBytes() {
+        return responseWireBytes;
+    }
+
+    public void addResponseWireBytes(long bytes) {
+        this.responseWireBytes += bytes;
+    }
+
+    /**
+     * Код ответа, -1 если ответ не получен
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    /**
+     * Кодирование тела запроса (gzip), null если тело не сжималось
+     */
+    public String getRequestEncoding() {
+        return requestEncoding;
+    }
+
+    public void setRequestEncoding(String requestEncoding) {
+        this.requestEncoding = requestEncoding;
+    }
+
+    /**
+     * Кодирование тела ответа (gzip/deflate), null если ответ пришел несжатым
+     */
+    public String getResponseEncoding() {
+        return responseEncoding;
+    }
+
+    public void setResponseEncoding(String responseEncoding) {
+        this.responseEncoding = responseEncoding;
+    }
+
+    /**
+     * Степень сжатия тела запроса: несжатый размер / переданный размер
+     *
+     * @return степень сжатия, 1 если тело не сжималось или размер неизвестен
+     */
+    public double getRequestCompressionRatio() {
+        return ratio(requestBytes, requestWireBytes);
+    }
+
+    /**
+     * Степень сжатия тела ответа: несжатый размер / переданный размер
+     *
+     * @return степень сжатия, 1 если тело не сжималось или пустое
+     */
+    public double getResponseCompressionRatio() {
+        return ratio(responseBytes, responseWireBytes);
+    }
+
+    private static double ratio(long bytes, long wireBytes) {
+        if (bytes <= 0 || wireBytes <= 0) return 1;
+        return (double) bytes / wireBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "request %d/%d bytes (%s, x%.2f), response %d/%d bytes (%s, x%.2f)",
+                requestBytes, requestWireBytes, requestEncoding != null ? requestEncoding : "identity", getRequestCompressionRatio(),
+                responseBytes, responseWireBytes, responseEncoding != null ? responseEncoding : "identity", getResponseCompressionRatio()
+        );
+    }
+}
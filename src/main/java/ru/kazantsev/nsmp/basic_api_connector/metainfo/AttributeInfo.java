@@ -0,0 +1,62 @@
+package ru.kazantsev.nsmp.basic_api_connector.metainfo;
+
+/**
+ * Сведения об атрибуте метакласса из индекса метаинформации
+ */
+@SuppressWarnings("unused")
+public class AttributeInfo {
+
+    private final String code;
+    private final String title;
+    private final String type;
+    private final String linkedMetaClass;
+    private final String declaringMetaClass;
+
+    public AttributeInfo(String code, String title, String type, String linkedMetaClass, String declaringMetaClass) {
+        this.code = code;
+        this.title = title;
+        this.type = type;
+        this.linkedMetaClass = linkedMetaClass;
+        this.declaringMetaClass = declaringMetaClass;
+    }
+
+    /**
+     * Код атрибута
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Название атрибута
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Код типа атрибута, например, string, object, boLinks, catalogItem
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Fqn метакласса, на который ссылается атрибут ссылочного типа, null для остальных
+     */
+    public String getLinkedMetaClass() {
+        return linkedMetaClass;
+    }
+
+    /**
+     * Fqn метакласса, в котором атрибут объявлен
+     */
+    public String getDeclaringMetaClass() {
+        return declaringMetaClass;
+    }
+
+    @Override
+    public String toString() {
+        return code + " (" + type + (linkedMetaClass != null ? " -> " + linkedMetaClass : "") + ")";
+    }
+}
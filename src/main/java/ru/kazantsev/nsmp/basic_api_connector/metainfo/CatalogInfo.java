@@ -0,0 +1,35 @@
+package ru.kazantsev.nsmp.basic_api_connector.metainfo;
+
+/**
+ * Сведения о справочнике из индекса метаинформации
+ */
+@SuppressWarnings("unused")
+public class CatalogInfo {
+
+    private final String code;
+    private final String title;
+
+    public CatalogInfo(String code, String title) {
+        this.code = code;
+        this.title = title;
+    }
+
+    /**
+     * Код справочника, он же fqn метакласса его элементов
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Название справочника
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    @Override
+    public String toString() {
+        return code + " / " + title;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.kazantsev.nsmp.basic_api_connector.metainfo;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Сведения о метаклассе из индекса метаинформации
+ */
+@SuppressWarnings("unused")
+public class MetaClassInfo {
+
+    private final String fqn;
+    private final String parentFqn;
+    private final String title;
+    private final Map<String, AttributeInfo> declaredAttributes;
+
+    public MetaClassInfo(String fqn, String parentFqn, String title, Map<String, AttributeInfo> declaredAttributes) {
+        this.fqn = fqn;
+        this.parentFqn = parentFqn;
+        this.title = title;
+        this.declaredAttributes = Collections.unmodifiableMap(declaredAttributes);
+    }
+
+    /**
+     * Fqn метакласса, например, serviceCall$incident
+     */
+    public String getFqn() {
+        return fqn;
+    }
+
+    /**
+     * Fqn родительского метакласса, null для корневых
+     */
+    public String getParentFqn() {
+        return parentFqn;
+    }
+
+    /**
+     * Название метакласса
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Атрибуты, описанные непосредственно в этом метаклассе, ключ - код атрибута
+     */
+    public Map<String, AttributeInfo> getDeclaredAttributes() {
+        return declaredAttributes;
+    }
+
+    @Override
+    public String toString() {
+        return fqn + " / " + title;
+    }
+}
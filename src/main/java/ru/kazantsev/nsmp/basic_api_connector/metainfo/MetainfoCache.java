@@ -0,0 +1,333 @@
+package ru.kazantsev.nsmp.basic_api_connector.metainfo;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.StreamProcessor;
+import ru.kazantsev.nsmp.basic_api_connector.dto.MetainfoCacheEntryDto;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Дисковый кеш метаинформации.
+ * Метаинформация каждой инсталляции хранится сжатой gzip в поддиректории с ключом инсталляции,
+ * файл данных называется по SHA-256 содержимого, рядом лежит описание с версией приложения инсталляции.
+ * Ключ инсталляции - идентификатор инсталляции коннектора, а если он не задан - схема и хост (с портом, если он указан),
+ * чтобы коннекторы к разным серверам без идентификатора не получали метаинформацию друг друга.
+ * Кеш подключается к коннектору через {@link Connector#setMetainfoCache(MetainfoCache)},
+ * после чего все методы metainfo отдают закешированную копию, а uploadMetainfo сбрасывает ее.
+ * <p>
+ * Закешированная копия считается устаревшей, если она старше maxAge (если задан)
+ * или если включена проверка версии и версия инсталляции изменилась.
+ * Блокировки у каждой инсталляции свои и держатся только на время работы с файлами,
+ * поэтому выгрузка метаинформации одной инсталляции не задерживает выдачу и обновление копий других
+ */
+public class MetainfoCache {
+
+    protected static final String ENTRY_FILE_NAME = "metainfo.json";
+    protected static final String DATA_FILE_EXTENSION = ".xml.gz";
+
+    protected static final Logger logger = LoggerFactory.getLogger(MetainfoCache.class);
+
+    protected final Path directory;
+
+    /**
+     * Блокировки инсталляций по ключу инсталляции
+     */
+    protected final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    protected final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Максимальный возраст закешированной копии, null - без ограничения
+     */
+    protected Duration maxAge;
+
+    /**
+     * Признак необходимости сверять версию инсталляции перед выдачей закешированной копии
+     */
+    protected boolean checkVersion = true;
+
+    /**
+     * Создать кеш в указанной директории
+     *
+     * @param directory корневая директория кеша
+     */
+    public MetainfoCache(Path directory) {
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Установить максимальный возраст закешированной копии
+     *
+     * @param maxAge максимальный возраст, null - без ограничения
+     */
+    @SuppressWarnings("unused")
+    public void setMaxAge(Duration maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Установить признак сверки версии инсталляции.
+     * Если включено, перед выдачей копии вызывается легкий метод version,
+     * если выключено, копия отдается без обращения к инсталляции
+     *
+     * @param checkVersion признак сверки версии
+     */
+    @SuppressWarnings("unused")
+    public void setCheckVersion(boolean checkVersion) {
+        this.checkVersion = checkVersion;
+    }
+
+    /**
+     * Прочитать метаинформацию инсталляции из кеша, при необходимости обновив его
+     *
+     * @param connector   коннектор к инсталляции
+     * @param processor   обработчик потока несжатого xml
+     * @param readTimeout ожидание ответа в мс при обновлении
+     * @param <T>         тип результата обработки
+     * @return результат обработки
+     */
+    public <T> T read(Connector connector, StreamProcessor<T> processor, Long readTimeout) {
+        String installationId = getCacheKey(connector);
+        MetainfoCacheEntryDto entry = getEntry(installationId);
+        if (entry == null || isStale(entry, connector)) entry = refresh(connector, readTimeout);
+        try (InputStream inputStream = new GZIPInputStream(new BufferedInputStream(openDataFile(connector, entry, readTimeout)))) {
+            return processor.process(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read cached metainfo of installation " + installationId, e);
+        }
+    }
+
+    /**
+     * Открыть файл данных копии под блокировкой инсталляции, чтобы refresh и invalidate не удалили его до открытия.
+     * Открытый файл остается читаемым и после удаления.
+     * Если копию успели заменить или сбросить, открывается актуальная копия, при ее отсутствии кеш обновляется
+     *
+     * @param connector   коннектор к инсталляции
+     * @param entry       описание копии
+     * @param readTimeout ожидание ответа в мс при обновлении
+     * @return поток сжатых данных
+     */
+    protected InputStream openDataFile(Connector connector, MetainfoCacheEntryDto entry, Long readTimeout) throws IOException {
+        String installationId = getCacheKey(connector);
+        while (true) {
+            synchronized (getLock(installationId)) {
+                try {
+                    return Files.newInputStream(getDataFile(installationId, entry.sha256));
+                } catch (NoSuchFileException e) {
+                    entry = getEntry(installationId);
+                }
+            }
+            //копию сбросили, выгрузка идет без блокировки
+            if (entry == null) entry = refresh(connector, readTimeout);
+        }
+    }
+
+    /**
+     * Принудительно выгрузить метаинформацию с инсталляции и положить в кеш.
+     * Выгрузка идет без блокировки, под блокировкой инсталляции заменяется только описание копии
+     *
+     * @param connector   коннектор к инсталляции
+     * @param readTimeout ожидание ответа в мс
+     * @return описание новой закешированной копии
+     */
+    public MetainfoCacheEntryDto refresh(Connector connector, Long readTimeout) {
+        String installationId = getCacheKey(connector);
+        Path installationDirectory = getInstallationDirectory(installationId);
+        try {
+            Files.createDirectories(installationDirectory);
+            String version = connector.version();
+            Path temp = Files.createTempFile(installationDirectory, "metainfo", ".tmp");
+            try {
+                MessageDigest digest = newSha256();
+                long size = connector.downloadMetainfo(inputStream -> {
+                    try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                        return inputStream.transferTo(new DigestOutputStream(outputStream, digest));
+                    }
+                }, readTimeout);
+                MetainfoCacheEntryDto entry = new MetainfoCacheEntryDto();
+                entry.installationId = installationId;
+                entry.version = version;
+                entry.sha256 = HexFormat.of().formatHex(digest.digest());
+                entry.size = size;
+                entry.compressedSize = Files.size(temp);
+                entry.createdAt = System.currentTimeMillis();
+                synchronized (getLock(installationId)) {
+                    Files.move(temp, getDataFile(installationId, entry.sha256), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    writeEntry(installationDirectory, entry);
+                    deleteDataFiles(installationDirectory, entry.sha256);
+                }
+                logger.debug("Metainfo of installation {} cached, version: {}, size: {}, compressed: {}",
+                        installationId, version, entry.size, entry.compressedSize);
+                return entry;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't cache metainfo of installation " + installationId, e);
+        }
+    }
+
+    /**
+     * Сбросить закешированную копию инсталляции коннектора
+     *
+     * @param connector коннектор к инсталляции
+     */
+    public void invalidate(Connector connector) {
+        invalidate(getCacheKey(connector));
+    }
+
+    /**
+     * Сбросить закешированную копию инсталляции
+     *
+     * @param installationId ключ инсталляции, см. {@link #getCacheKey(Connector)}
+     */
+    public void invalidate(String installationId) {
+        Path installationDirectory = getInstallationDirectory(installationId);
+        try {
+            synchronized (getLock(installationId)) {
+                Files.deleteIfExists(installationDirectory.resolve(ENTRY_FILE_NAME));
+                deleteDataFiles(installationDirectory, null);
+            }
+            logger.debug("Cached metainfo of installation {} invalidated", installationId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't invalidate cached metainfo of installation " + installationId, e);
+        }
+    }
+
+    /**
+     * Получить описание закешированной копии инсталляции коннектора
+     *
+     * @param connector коннектор к инсталляции
+     * @return описание, null если копии нет
+     */
+    @SuppressWarnings("unused")
+    public MetainfoCacheEntryDto getEntry(Connector connector) {
+        return getEntry(getCacheKey(connector));
+    }
+
+    /**
+     * Получить описание закешированной копии
+     *
+     * @param installationId ключ инсталляции, см. {@link #getCacheKey(Connector)}
+     * @return описание, null если копии нет
+     */
+    public MetainfoCacheEntryDto getEntry(String installationId) {
+        Path installationDirectory = getInstallationDirectory(installationId);
+        Path entryFile = installationDirectory.resolve(ENTRY_FILE_NAME);
+        if (!Files.isRegularFile(entryFile)) return null;
+        try {
+            MetainfoCacheEntryDto entry = objectMapper.readValue(entryFile.toFile(), MetainfoCacheEntryDto.class);
+            if (entry.sha256 == null || !Files.isRegularFile(getDataFile(installationId, entry.sha256))) return null;
+            return entry;
+        } catch (IOException e) {
+            logger.warn("Couldn't read cached metainfo entry at {}. Error text: {}", entryFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Проверить, устарела ли закешированная копия.
+     * Если версию получить не удалось (кроме отмены запроса), копия считается актуальной
+     *
+     * @param entry     описание копии
+     * @param connector коннектор к инсталляции
+     * @return true, если копию нужно обновить
+     */
+    protected boolean isStale(MetainfoCacheEntryDto entry, Connector connector) {
+        if (maxAge != null && (entry.createdAt == null || System.currentTimeMillis() - entry.createdAt > maxAge.toMillis())) {
+            return true;
+        }
+        if (!checkVersion) return false;
+        try {
+            return !Objects.equals(entry.version, connector.version());
+        } catch (RequestCancelledException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            //инсталляция недоступна, перегружена или запрос не пропущен защитой коннектора - отдается копия
+            logger.warn("Couldn't check version of installation {}, cached metainfo will be used. Error text: {}",
+                    entry.installationId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Получить ключ инсталляции коннектора: идентификатор инсталляции, а если он не задан - схема и хост
+     *
+     * @param connector коннектор к инсталляции
+     * @return ключ инсталляции
+     */
+    public static String getCacheKey(Connector connector) {
+        if (connector.getInstallationId() != null) return connector.getInstallationId();
+        return connector.getScheme() + "_" + connector.getHost();
+    }
+
+    protected Object getLock(String installationId) {
+        return locks.computeIfAbsent(installationId, key -> new Object());
+    }
+
+    protected Path getInstallationDirectory(String installationId) {
+        return directory.resolve(installationId.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+    protected Path getDataFile(String installationId, String sha256) {
+        return getInstallationDirectory(installationId).resolve(sha256 + DATA_FILE_EXTENSION);
+    }
+
+    protected void writeEntry(Path installationDirectory, MetainfoCacheEntryDto entry) throws IOException {
+        Path temp = Files.createTempFile(installationDirectory, ENTRY_FILE_NAME, ".tmp");
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), entry);
+            Files.move(temp, installationDirectory.resolve(ENTRY_FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Удалить файлы данных, кроме указанного
+     *
+     * @param installationDirectory директория инсталляции
+     * @param keepSha256            хеш файла, который нужно оставить, null - удалить все
+     */
+    protected void deleteDataFiles(Path installationDirectory, String keepSha256) throws IOException {
+        if (!Files.isDirectory(installationDirectory)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(installationDirectory, "*" + DATA_FILE_EXTENSION)) {
+            for (Path file : files) {
+                if (keepSha256 != null && file.getFileName().toString().equals(keepSha256 + DATA_FILE_EXTENSION)) continue;
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    protected static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package ru.kazantsev.nsmp.basic_api_connector.metainfo;
+
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Локальный индекс метаинформации инсталляции.
+ * Строится за один потоковый проход по xml метаинформации, хранится на диске
+ * в компактном бинарном виде и отвечает на вопросы о метаклассах, атрибутах и справочниках
+ * без обращения к инсталляции.
+ * <p>
+ * Из xml извлекаются только метаклассы (сегменты metaClass/mc или сегменты с seg-type="metaclass"),
+ * их атрибуты (элементы attribute с кодом и типом) и справочники (сегменты catalog),
+ * остальная метаинформация пропускается. Сегментом считается элемент с атрибутом seg-type,
+ * одноименные элементы внутри других сегментов (например, ссылки на метакласс в действиях по событию) не учитываются.
+ * <p>
+ * Индекс помнит версию инсталляции, по которой построен, и {@link #loadOrBuild} перестраивает его, когда версия меняется
+ */
+public class MetainfoIndex {
+
+    protected static final int FILE_MAGIC = 0x4E534D49;
+    protected static final int FILE_VERSION = 2;
+
+    private final String version;
+    private final Map<String, MetaClassInfo> metaClasses;
+    private final Map<String, CatalogInfo> catalogs;
+    private final Map<String, List<MetaClassInfo>> children = new HashMap<>();
+    private final Map<String, Map<String, AttributeInfo>> resolvedAttributes = new ConcurrentHashMap<>();
+
+    protected MetainfoIndex(Map<String, MetaClassInfo> metaClasses, Map<String, CatalogInfo> catalogs) {
+        this(metaClasses, catalogs, null);
+    }
+
+    protected MetainfoIndex(Map<String, MetaClassInfo> metaClasses, Map<String, CatalogInfo> catalogs, String version) {
+        this.version = version;
+        this.metaClasses = Collections.unmodifiableMap(metaClasses);
+        this.catalogs = Collections.unmodifiableMap(catalogs);
+        for (MetaClassInfo metaClass : metaClasses.values()) {
+            if (metaClass.getParentFqn() == null) continue;
+            children.computeIfAbsent(metaClass.getParentFqn(), key -> new ArrayList<>()).add(metaClass);
+        }
+    }
+
+    /**
+     * Построить индекс, загрузив метаинформацию с инсталляции потоком.
+     * Версия инсталляции запрашивается до загрузки, поэтому если метаинформация изменится во время загрузки,
+     * индекс окажется устаревшим и будет перестроен при следующем loadOrBuild
+     *
+     * @param connector   коннектор к инсталляции
+     * @param readTimeout ожидание ответа в мс
+     * @return индекс
+     */
+    public static MetainfoIndex build(Connector connector, Long readTimeout) {
+        String version = connector.version();
+        MetainfoIndex index = connector.metainfoXml(MetainfoIndex::parse, readTimeout);
+        return new MetainfoIndex(index.metaClasses, index.catalogs, version);
+    }
+
+    /**
+     * Загрузить индекс из файла, а если его нет, он в старом формате или построен по другой версии инсталляции -
+     * построить по метаинформации инсталляции и сохранить
+     *
+     * @param indexFile   файл индекса
+     * @param connector   коннектор к инсталляции
+     * @param readTimeout ожидание ответа в мс
+     * @return индекс
+     * @throws IOException если не удалось записать файл индекса
+     */
+    @SuppressWarnings("unused")
+    public static MetainfoIndex loadOrBuild(Path indexFile, Connector connector, Long readTimeout) throws IOException {
+        if (Files.isRegularFile(indexFile)) {
+            MetainfoIndex loaded = null;
+            try {
+                loaded = load(indexFile);
+            } catch (IOException ignored) {
+                //файл в старом формате или поврежден - перестраиваем
+            }
+            if (loaded != null && loaded.version != null && loaded.version.equals(connector.version())) return loaded;
+        }
+        MetainfoIndex index = build(connector, readTimeout);
+        index.save(indexFile);
+        return index;
+    }
+
+    /**
+     * Построить индекс по файлу метаинформации
+     *
+     * @param xmlFile файл xml метаинформации
+     * @return индекс
+     * @throws IOException        если не удалось прочитать файл
+     * @throws XMLStreamException если xml некорректен
+     */
+    @SuppressWarnings("unused")
+    public static MetainfoIndex parse(Path xmlFile) throws IOException, XMLStreamException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(xmlFile))) {
+            XMLStreamReader reader = Connector.newXmlInputFactory().createXMLStreamReader(inputStream);
+            try {
+                return parse(reader);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Построить индекс по xml метаинформации. В памяти одновременно держится только один метакласс
+     *
+     * @param reader StAX reader, спозиционированный на начале документа
+     * @return индекс
+     * @throws XMLStreamException если xml некорректен
+     */
+    public static MetainfoIndex parse(XMLStreamReader reader) throws XMLStreamException {
+        Map<String, MetaClassInfo> metaClasses = new LinkedHashMap<>();
+        Map<String, CatalogInfo> catalogs = new LinkedHashMap<>();
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) continue;
+            if (isMetaClassElement(reader)) {
+                MetaClassInfo metaClass = toMetaClass(Node.read(reader));
+                if (metaClass != null) metaClasses.put(metaClass.getFqn(), metaClass);
+            } else if (isCatalogElement(reader)) {
+                CatalogInfo catalog = toCatalog(Node.read(reader));
+                if (catalog != null) catalogs.put(catalog.getCode(), catalog);
+            }
+        }
+        return new MetainfoIndex(metaClasses, catalogs);
+    }
+
+    /**
+     * Загрузить индекс, ранее сохраненный методом save
+     *
+     * @param indexFile файл индекса
+     * @return индекс
+     * @throws IOException если файл не удалось прочитать или он в неизвестном формате
+     */
+    public static MetainfoIndex load(Path indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(indexFile))))) {
+            if (in.readInt() != FILE_MAGIC) throw new IOException("File " + indexFile + " is not a metainfo index");
+            int version = in.readInt();
+            if (version != FILE_VERSION) throw new IOException("Unsupported metainfo index version " + version + " in " + indexFile);
+            String sourceVersion = in.readBoolean() ? in.readUTF() : null;
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) strings[i] = in.readUTF();
+            int metaClassCount = in.readInt();
+            Map<String, MetaClassInfo> metaClasses = new LinkedHashMap<>();
+            for (int i = 0; i < metaClassCount; i++) {
+                String fqn = readString(in, strings);
+                String parent = readString(in, strings);
+                String title = readString(in, strings);
+                int attributeCount = in.readInt();
+                Map<String, AttributeInfo> attributes = new LinkedHashMap<>();
+                for (int j = 0; j < attributeCount; j++) {
+                    String code = readString(in, strings);
+                    attributes.put(code, new AttributeInfo(
+                            code,
+                            readString(in, strings),
+                            readString(in, strings),
+                            readString(in, strings),
+                            fqn
+                    ));
+                }
+                metaClasses.put(fqn, new MetaClassInfo(fqn, parent, title, attributes));
+            }
+            int catalogCount = in.readInt();
+            Map<String, CatalogInfo> catalogs = new LinkedHashMap<>();
+            for (int i = 0; i < catalogCount; i++) {
+                String code = readString(in, strings);
+                catalogs.put(code, new CatalogInfo(code, readString(in, strings)));
+            }
+            return new MetainfoIndex(metaClasses, catalogs, sourceVersion);
+        }
+    }
+
+    /**
+     * Сохранить индекс в файл. Строки пишутся один раз в общую таблицу, файл сжимается gzip
+     *
+     * @param indexFile файл индекса
+     * @throws IOException если не удалось записать файл
+     */
+    public void save(Path indexFile) throws IOException {
+        Map<String, Integer> table = new LinkedHashMap<>();
+        for (MetaClassInfo metaClass : metaClasses.values()) {
+            intern(table, metaClass.getFqn(), metaClass.getParentFqn(), metaClass.getTitle());
+            for (AttributeInfo attribute : metaClass.getDeclaredAttributes().values()) {
+                intern(table, attribute.getCode(), attribute.getTitle(), attribute.getType(), attribute.getLinkedMetaClass());
+            }
+        }
+        for (CatalogInfo catalog : catalogs.values()) intern(table, catalog.getCode(), catalog.getTitle());
+
+        Path directory = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream fileStream = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(fileStream)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeBoolean(version != null);
+                if (version != null) out.writeUTF(version);
+                out.writeInt(table.size());
+                for (String value : table.keySet()) out.writeUTF(value);
+                out.writeInt(metaClasses.size());
+                for (MetaClassInfo metaClass : metaClasses.values()) {
+                    writeString(out, table, metaClass.getFqn());
+                    writeString(out, table, metaClass.getParentFqn());
+                    writeString(out, table, metaClass.getTitle());
+                    out.writeInt(metaClass.getDeclaredAttributes().size());
+                    for (AttributeInfo attribute : metaClass.getDeclaredAttributes().values()) {
+                        writeString(out, table, attribute.getCode());
+                        writeString(out, table, attribute.getTitle());
+                        writeString(out, table, attribute.getType());
+                        writeString(out, table, attribute.getLinkedMetaClass());
+                    }
+                }
+                out.writeInt(catalogs.size());
+                for (CatalogInfo catalog : catalogs.values()) {
+                    writeString(out, table, catalog.getCode());
+                    writeString(out, table, catalog.getTitle());
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Получить версию инсталляции, по метаинформации которой построен индекс
+     *
+     * @return версия, null если индекс построен по файлу или xml
+     */
+    @SuppressWarnings("unused")
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Получить метакласс
+     *
+     * @param fqn fqn метакласса, например, serviceCall$incident
+     * @return метакласс, null если такого нет
+     */
+    public MetaClassInfo getMetaClass(String fqn) {
+        return metaClasses.get(fqn);
+    }
+
+    /**
+     * Получить все метаклассы
+     *
+     * @return метаклассы в порядке следования в метаинформации
+     */
+    @SuppressWarnings("unused")
+    public Collection<MetaClassInfo> getMetaClasses() {
+        return metaClasses.values();
+    }
+
+    /**
+     * Получить цепочку метаклассов от указанного до корневого
+     *
+     * @param fqn fqn метакласса
+     * @return сам метакласс и все его предки, пустой список если метакласса нет
+     */
+    public List<MetaClassInfo> getHierarchy(String fqn) {
+        List<MetaClassInfo> hierarchy = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        MetaClassInfo current = metaClasses.get(fqn);
+        while (current != null && visited.add(current.getFqn())) {
+            hierarchy.add(current);
+            current = current.getParentFqn() != null ? metaClasses.get(current.getParentFqn()) : null;
+        }
+        return hierarchy;
+    }
+
+    /**
+     * Получить непосредственных потомков метакласса
+     *
+     * @param fqn fqn метакласса, например, serviceCall
+     * @return дочерние метаклассы (типы)
+     */
+    @SuppressWarnings("unused")
+    public List<MetaClassInfo> getChildren(String fqn) {
+        return Collections.unmodifiableList(children.getOrDefault(fqn, List.of()));
+    }
+
+    /**
+     * Получить атрибуты метакласса с учетом унаследованных от предков.
+     * Если атрибут переопределен в потомке, возвращается описание из потомка
+     *
+     * @param fqn fqn метакласса
+     * @return атрибуты, ключ - код атрибута, пустая мапа если метакласса нет
+     */
+    public Map<String, AttributeInfo> getAttributes(String fqn) {
+        if (!metaClasses.containsKey(fqn)) return Map.of();
+        return resolvedAttributes.computeIfAbsent(fqn, key -> {
+            List<MetaClassInfo> hierarchy = getHierarchy(key);
+            Map<String, AttributeInfo> attributes = new LinkedHashMap<>();
+            for (int i = hierarchy.size() - 1; i >= 0; i--) {
+                attributes.putAll(hierarchy.get(i).getDeclaredAttributes());
+            }
+            return Collections.unmodifiableMap(attributes);
+        });
+    }
+
+    /**
+     * Получить атрибут метакласса с учетом унаследованных
+     *
+     * @param fqn      fqn метакласса
+     * @param attrCode код атрибута
+     * @return атрибут, null если его нет
+     */
+    public AttributeInfo getAttribute(String fqn, String attrCode) {
+        return getAttributes(fqn).get(attrCode);
+    }
+
+    /**
+     * Получить код типа атрибута
+     *
+     * @param fqn      fqn метакласса
+     * @param attrCode код атрибута
+     * @return код типа, null если атрибута нет
+     */
+    @SuppressWarnings("unused")
+    public String getAttributeType(String fqn, String attrCode) {
+        AttributeInfo attribute = getAttribute(fqn, attrCode);
+        return attribute != null ? attribute.getType() : null;
+    }
+
+    /**
+     * Получить справочник
+     *
+     * @param code код справочника
+     * @return справочник, null если такого нет
+     */
+    @SuppressWarnings("unused")
+    public CatalogInfo getCatalog(String code) {
+        return catalogs.get(code);
+    }
+
+    /**
+     * Получить все справочники
+     *
+     * @return справочники в порядке следования в метаинформации
+     */
+    @SuppressWarnings("unused")
+    public Collection<CatalogInfo> getCatalogs() {
+        return catalogs.values();
+    }
+
+    private static void intern(Map<String, Integer> table, String... values) {
+        for (String value : values) {
+            if (value != null) table.putIfAbsent(value, table.size());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> table, String value) throws IOException {
+        out.writeInt(value == null ? -1 : table.get(value));
+    }
+
+    private static String readString(DataInputStream in, String[] strings) throws IOException {
+        int index = in.readInt();
+        if (index == -1) return null;
+        if (index < 0 || index >= strings.length) throw new IOException("Corrupted metainfo index, string reference " + index);
+        return strings[index];
+    }
+
+    protected static boolean isMetaClassElement(XMLStreamReader reader) {
+        String segType = reader.getAttributeValue(null, "seg-type");
+        if (segType == null) return false;
+        String name = reader.getLocalName();
+        return "metaClass".equals(name) || "mc".equals(name) || "metaclass".equalsIgnoreCase(segType);
+    }
+
+    protected static boolean isCatalogElement(XMLStreamReader reader) {
+        String segType = reader.getAttributeValue(null, "seg-type");
+        if (segType == null) return false;
+        return "catalog".equals(reader.getLocalName()) || "catalog".equalsIgnoreCase(segType);
+    }
+
+    protected static MetaClassInfo toMetaClass(Node node) {
+        Node fqnNode = node.child("fqn");
+        String fqn = fqnNode != null ? fqnNode.asFqn() : node.attributes.get("seg-id");
+        if (fqn == null || fqn.isEmpty()) return null;
+        Node parentNode = node.child("parent");
+        String parent = parentNode != null ? parentNode.asFqn() : null;
+        if ((parent == null || parent.isEmpty()) && fqn.contains("$")) parent = fqn.substring(0, fqn.indexOf('$'));
+        if (parent != null && parent.isEmpty()) parent = null;
+        Map<String, AttributeInfo> attributes = new LinkedHashMap<>();
+        List<Node> attributeNodes = new ArrayList<>();
+        node.collect("attribute", attributeNodes);
+        for (Node attributeNode : attributeNodes) {
+            String code = attributeNode.childText("code");
+            if (code == null) continue;
+            Node type = attributeNode.child("type");
+            attributes.put(code, new AttributeInfo(
+                    code,
+                    title(attributeNode.child("title")),
+                    type != null ? type.childText("code") : null,
+                    type != null ? linkedMetaClass(type) : null,
+                    fqn
+            ));
+        }
+        return new MetaClassInfo(fqn, parent, title(node.child("title")), attributes);
+    }
+
+    protected static CatalogInfo toCatalog(Node node) {
+        String code = node.childText("code");
+        if (code == null) code = node.attributes.get("seg-id");
+        if (code == null) return null;
+        return new CatalogInfo(code, title(node.child("title")));
+    }
+
+    private static String title(Node titleNode) {
+        if (titleNode == null) return null;
+        String value = titleNode.childText("value");
+        return value != null ? value : titleNode.text();
+    }
+
+    private static String linkedMetaClass(Node type) {
+        List<Node> nodes = new ArrayList<>();
+        type.collectAll(nodes);
+        for (Node node : nodes) {
+            if (("property".equals(node.name) || "param".equals(node.name)) && "metaClass".equals(node.childText("code"))) {
+                return node.childText("value");
+            }
+            if ("metaClass".equals(node.name) || "relatedMetaClass".equals(node.name)) {
+                String fqn = node.asFqn();
+                if (fqn != null && !fqn.isEmpty()) return fqn;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Поддерево xml одного метакласса или справочника
+     */
+    protected static final class Node {
+        final String name;
+        final Map<String, String> attributes = new HashMap<>();
+        final List<Node> children = new ArrayList<>();
+        final StringBuilder text = new StringBuilder();
+
+        private Node(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Прочитать текущий элемент целиком, reader должен стоять на START_ELEMENT.
+         * После чтения reader стоит на соответствующем END_ELEMENT
+         */
+        static Node read(XMLStreamReader reader) throws XMLStreamException {
+            Node node = new Node(reader.getLocalName());
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                node.attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) node.children.add(read(reader));
+                else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) node.text.append(reader.getText());
+                else if (event == XMLStreamConstants.END_ELEMENT) break;
+            }
+            return node;
+        }
+
+        Node child(String childName) {
+            for (Node child : children) {
+                if (child.name.equals(childName)) return child;
+            }
+            return null;
+        }
+
+        String childText(String childName) {
+            Node child = child(childName);
+            return child != null ? child.text() : null;
+        }
+
+        String text() {
+            String value = text.toString().trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        /**
+         * Fqn в виде id$case, если есть дочерние id/case, иначе текст элемента
+         */
+        String asFqn() {
+            String id = childText("id");
+            if (id == null) return text();
+            String caseCode = childText("case");
+            return caseCode != null ? id + "$" + caseCode : id;
+        }
+
+        /**
+         * Собрать потомков с указанным именем, не заходя внутрь найденных
+         */
+        void collect(String childName, List<Node> result) {
+            for (Node child : children) {
+                if (child.name.equals(childName)) result.add(child);
+                else child.collect(childName, result);
+            }
+        }
+
+        void collectAll(List<Node> result) {
+            for (Node child : children) {
+                result.add(child);
+                child.collectAll(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package ru.kazantsev.nsmp.basic_api_connector.metrics;
+
+/**
+ * Текущие показатели пула соединений коннектора
+ */
+public interface ConnectionPoolGauges {
+
+    /**
+     * Получить количество занятых соединений
+     */
+    int getLeased();
+
+    /**
+     * Получить количество свободных открытых соединений
+     */
+    int getAvailable();
+
+    /**
+     * Получить количество запросов, ожидающих соединения
+     */
+    int getPending();
+
+    /**
+     * Получить максимальное количество соединений
+     */
+    int getMax();
+}
@@ -0,0 +1,126 @@
+package ru.kazantsev.nsmp.basic_api_connector.metrics;
+
+import ru.kazantsev.nsmp.basic_api_connector.http.TransferStats;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики запросов в памяти, без зависимостей: по операциям количество запросов,
+ * ошибки по кодам ответа, гистограмма времени ответа и объем переданных данных,
+ * а также показатели пула соединений
+ */
+public class InMemoryMetrics implements MetricsListener {
+
+    protected final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    protected volatile ConnectionPoolGauges connectionPool;
+
+    @Override
+    public void onRequest(RequestEvent event) {
+        operations.computeIfAbsent(event.getOperation(), key -> new OperationMetrics()).record(event);
+    }
+
+    @Override
+    public void bindConnectionPool(ConnectionPoolGauges pool) {
+        this.connectionPool = pool;
+    }
+
+    /**
+     * Получить метрики по операциям
+     *
+     * @return метрики, ключ - операция (PATH_SEGMENT)
+     */
+    public Map<String, OperationMetrics> getOperations() {
+        return Collections.unmodifiableMap(new TreeMap<>(operations));
+    }
+
+    /**
+     * Получить показатели пула соединений
+     *
+     * @return показатели, null если получатель не подключен к коннектору
+     */
+    @SuppressWarnings("unused")
+    public ConnectionPoolGauges getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Сбросить метрики запросов
+     */
+    @SuppressWarnings("unused")
+    public void reset() {
+        operations.clear();
+    }
+
+    /**
+     * Метрики одной операции
+     */
+    @SuppressWarnings("unused")
+    public static class OperationMetrics {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final Map<Integer, LongAdder> errorsByStatus = new ConcurrentHashMap<>();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        void record(RequestEvent event) {
+            requests.increment();
+            if (!event.isSuccess()) {
+                errors.increment();
+                errorsByStatus.computeIfAbsent(event.getStatus(), key -> new LongAdder()).increment();
+            }
+            TransferStats stats = event.getTransferStats();
+            if (stats.getRequestWireBytes() > 0) requestBytes.add(stats.getRequestWireBytes());
+            responseBytes.add(stats.getResponseWireBytes());
+            latency.record(event.getDuration());
+        }
+
+        /**
+         * Количество попыток запросов
+         */
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * Количество попыток, завершившихся ошибкой
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * Количество ошибок по кодам ответа, -1 - ответ не получен
+         */
+        public Map<Integer, Long> getErrorsByStatus() {
+            Map<Integer, Long> result = new TreeMap<>();
+            errorsByStatus.forEach((status, counter) -> result.put(status, counter.sum()));
+            return Collections.unmodifiableMap(result);
+        }
+
+        /**
+         * Отправлено байт в телах запросов (после сжатия)
+         */
+        public long getRequestBytes() {
+            return requestBytes.sum();
+        }
+
+        /**
+         * Получено байт в телах ответов (до распаковки)
+         */
+        public long getResponseBytes() {
+            return responseBytes.sum();
+        }
+
+        /**
+         * Гистограмма времени ответа
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+}
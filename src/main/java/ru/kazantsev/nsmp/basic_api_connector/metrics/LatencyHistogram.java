@@ -0,0 +1,107 @@
+package ru.kazantsev.nsmp.basic_api_connector.metrics;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма времени ответа с фиксированными границами корзин.
+ * Перцентиль оценивается верхней границей корзины, в которую он попал, для последней корзины - максимумом
+ */
+@SuppressWarnings("unused")
+public class LatencyHistogram {
+
+    /**
+     * Верхние границы корзин в мс
+     */
+    public static final long[] BOUNDS_MILLIS = {
+            5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000, 120_000, 300_000
+    };
+
+    protected final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length + 1];
+    protected final LongAdder count = new LongAdder();
+    protected final LongAdder totalNanos = new LongAdder();
+    protected final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Учесть время ответа
+     */
+    public void record(Duration latency) {
+        long nanos = latency.toNanos();
+        int index = 0;
+        while (index < BOUNDS_MILLIS.length && nanos > BOUNDS_MILLIS[index] * 1_000_000) index++;
+        buckets[index].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Получить количество учтенных ответов
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Получить среднее время ответа
+     */
+    public Duration getMean() {
+        long total = count.sum();
+        return total == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos.sum() / total);
+    }
+
+    /**
+     * Получить максимальное время ответа
+     */
+    public Duration getMax() {
+        return Duration.ofNanos(maxNanos.get());
+    }
+
+    /**
+     * Получить оценку перцентиля
+     *
+     * @param quantile квантиль от 0 до 1, например 0.99
+     * @return верхняя граница корзины перцентиля, Duration.ZERO если ответов нет
+     */
+    public Duration percentile(double quantile) {
+        long total = 0;
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) return Duration.ZERO;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                Duration bound = Duration.ofMillis(BOUNDS_MILLIS[i]);
+                Duration max = getMax();
+                return max.compareTo(bound) < 0 ? max : bound;
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Получить количество ответов по корзинам
+     *
+     * @return ключ - верхняя граница корзины в мс, Long.MAX_VALUE для последней корзины
+     */
+    public Map<Long, Long> getBuckets() {
+        Map<Long, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < buckets.length; i++) {
+            result.put(i < BOUNDS_MILLIS.length ? BOUNDS_MILLIS[i] : Long.MAX_VALUE, buckets[i].sum());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+}
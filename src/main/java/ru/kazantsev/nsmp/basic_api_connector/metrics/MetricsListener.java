@@ -0,0 +1,27 @@
+package ru.kazantsev.nsmp.basic_api_connector.metrics;
+
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+
+/**
+ * Получатель метрик запросов коннектора.
+ * Вызывается после каждой попытки запроса в потоке, который ее выполнял, поэтому должен быть быстрым и потокобезопасным.
+ * Исключения получателя не влияют на запрос, а только пишутся в лог.
+ * Реализация без зависимостей - {@link InMemoryMetrics}, подключается через {@link Connector#setMetricsListener(MetricsListener)}
+ */
+public interface MetricsListener {
+
+    /**
+     * Попытка запроса завершена, успешно или с ошибкой
+     *
+     * @param event данные попытки
+     */
+    void onRequest(RequestEvent event);
+
+    /**
+     * Получить показатели пула соединений коннектора, вызывается при подключении получателя
+     *
+     * @param pool показатели пула, значения читаются при каждом обращении
+     */
+    default void bindConnectionPool(ConnectionPoolGauges pool) {
+    }
+}
@@ -0,0 +1,62 @@
+package ru.kazantsev.nsmp.basic_api_connector.metrics;
+
+import ru.kazantsev.nsmp.basic_api_connector.http.TransferStats;
+
+import java.time.Duration;
+
+/**
+ * Данные одной попытки запроса для {@link MetricsListener}
+ */
+@SuppressWarnings("unused")
+public class RequestEvent {
+
+    private final TransferStats transferStats;
+    private final Duration duration;
+    private final boolean success;
+
+    /**
+     * @param transferStats объем переданных данных и код ответа
+     * @param duration      время выполнения, включая ожидание соединения и чтение ответа
+     * @param success       завершилась ли попытка успешно
+     */
+    public RequestEvent(TransferStats transferStats, Duration duration, boolean success) {
+        this.transferStats = transferStats;
+        this.duration = duration;
+        this.success = success;
+    }
+
+    /**
+     * Операция (PATH_SEGMENT метода API)
+     */
+    public String getOperation() {
+        return transferStats.getOperation();
+    }
+
+    /**
+     * Код ответа, -1 если ответ не получен
+     */
+    public int getStatus() {
+        return transferStats.getStatus();
+    }
+
+    /**
+     * Время выполнения
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Завершилась ли попытка успешно
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * Объем переданных данных
+     */
+    public TransferStats getTransferStats() {
+        return transferStats;
+    }
+}
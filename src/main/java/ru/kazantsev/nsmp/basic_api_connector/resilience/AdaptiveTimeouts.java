@@ -0,0 +1,120 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+
+import java.time.Duration;
+
+/**
+ * Адаптивные таймауты ответа по операциям.
+ * Таймаут - перцентиль времени ответа операции (по умолчанию p99), умноженный на multiplier,
+ * в пределах от minTimeout до maxTimeout. Пока ответов меньше minSamples, таймаут равен maxTimeout.
+ * Учитываются успешные ответы и ответы, не дождавшиеся таймаута (как время до таймаута),
+ * поэтому при росте времени ответа инсталляции таймаут постепенно увеличивается.
+ * Явно переданный readTimeout имеет приоритет, подключается через {@link Connector#setAdaptiveTimeouts(AdaptiveTimeouts)}
+ */
+public class AdaptiveTimeouts {
+
+    protected final double quantile;
+    protected final int minSamples;
+    protected final double multiplier;
+    protected final Duration minTimeout;
+    protected final Duration maxTimeout;
+    protected final LatencyTracker latencyTracker;
+
+    protected AdaptiveTimeouts(Builder builder) {
+        this.quantile = builder.quantile;
+        this.minSamples = builder.minSamples;
+        this.multiplier = builder.multiplier;
+        this.minTimeout = builder.minTimeout;
+        this.maxTimeout = builder.maxTimeout;
+        this.latencyTracker = new LatencyTracker(builder.windowSize);
+    }
+
+    /**
+     * Получить конструктор с настройками по умолчанию:
+     * p99 по последним 200 ответам (не меньше 30 ответов), множитель 3, таймаут от 1 с до 5 мин
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Получить таймаут ответа операции
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @return таймаут ответа
+     */
+    public Duration timeout(String operation) {
+        Duration percentile = latencyTracker.percentile(operation, quantile, minSamples);
+        if (percentile == null) return maxTimeout;
+        Duration timeout = Duration.ofNanos((long) (percentile.toNanos() * multiplier));
+        if (timeout.compareTo(minTimeout) < 0) return minTimeout;
+        if (timeout.compareTo(maxTimeout) > 0) return maxTimeout;
+        return timeout;
+    }
+
+    /**
+     * Учесть время ответа операции
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @param latency   время ответа
+     */
+    public void record(String operation, Duration latency) {
+        latencyTracker.record(operation, latency);
+    }
+
+    /**
+     * Получить статистику времени ответа, по которой выбираются таймауты
+     */
+    @SuppressWarnings("unused")
+    public LatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+
+    /**
+     * Конструктор адаптивных таймаутов
+     */
+    @SuppressWarnings("unused")
+    public static class Builder {
+        protected double quantile = 0.99;
+        protected int minSamples = 30;
+        protected int windowSize = 200;
+        protected double multiplier = 3;
+        protected Duration minTimeout = Duration.ofSeconds(1);
+        protected Duration maxTimeout = Duration.ofMinutes(5);
+
+        /**
+         * Перцентиль времени ответа, от которого считается таймаут, и количество последних ответов для его оценки
+         */
+        public Builder percentile(double quantile, int minSamples, int windowSize) {
+            if (quantile <= 0 || quantile >= 1) throw new IllegalArgumentException("quantile must be in (0, 1)");
+            this.quantile = quantile;
+            this.minSamples = minSamples;
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * Во сколько раз таймаут больше перцентиля времени ответа
+         */
+        public Builder multiplier(double multiplier) {
+            if (multiplier < 1) throw new IllegalArgumentException("multiplier must be at least 1");
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Границы таймаута, maxTimeout используется, пока ответов недостаточно для оценки
+         */
+        public Builder bounds(Duration minTimeout, Duration maxTimeout) {
+            if (minTimeout.compareTo(maxTimeout) > 0) throw new IllegalArgumentException("minTimeout must not exceed maxTimeout");
+            this.minTimeout = minTimeout;
+            this.maxTimeout = maxTimeout;
+            return this;
+        }
+
+        public AdaptiveTimeouts build() {
+            return new AdaptiveTimeouts(this);
+        }
+    }
+}
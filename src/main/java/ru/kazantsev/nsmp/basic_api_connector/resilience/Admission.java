@@ -0,0 +1,102 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import ru.kazantsev.nsmp.basic_api_connector.exception.BulkheadFullException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.ConcurrencyLimitExceededException;
+
+/**
+ * Места запроса в квоте класса операции и в ограничителе одновременных запросов,
+ * которые {@link PriorityScheduler} занимает без ожидания, когда до запроса доходит очередь.
+ * Пока места заняты, запрос ждет в очереди планировщика, а не в очередях квот и ограничителя,
+ * поэтому приоритеты соблюдаются на всех этапах, а запрос класса, квота которого занята, не задерживает запросы других классов
+ */
+public class Admission {
+
+    protected final String operation;
+    protected final Bulkheads bulkheads;
+    protected final ConcurrencyLimiter limiter;
+    protected final OperationClass operationClass;
+
+    protected boolean bulkheadRefused;
+    protected boolean limiterRefused;
+    protected long started;
+
+    /**
+     * @param operation операция (PATH_SEGMENT)
+     * @param bulkheads квоты по классам операций, null если не подключены
+     * @param limiter   ограничитель одновременных запросов, null если не подключен
+     */
+    public Admission(String operation, Bulkheads bulkheads, ConcurrencyLimiter limiter) {
+        this.operation = operation;
+        this.bulkheads = bulkheads;
+        this.limiter = limiter;
+        this.operationClass = bulkheads != null ? bulkheads.classify(operation) : null;
+    }
+
+    /**
+     * Занять места в квоте и ограничителе без ожидания
+     *
+     * @return true если заняты оба места, false если хотя бы одно занято другими запросами, тогда ничего не занимается
+     */
+    public boolean tryAcquire() {
+        bulkheadRefused = bulkheads != null && !bulkheads.tryAcquire(operationClass);
+        if (bulkheadRefused) return false;
+        limiterRefused = limiter != null && !limiter.tryAcquire();
+        if (limiterRefused) {
+            if (bulkheads != null) bulkheads.release(operationClass);
+            return false;
+        }
+        if (limiter != null) started = limiter.now();
+        return true;
+    }
+
+    /**
+     * Проверить, не ждет ли запрос места в квоте или ограничителе дольше их maxWait
+     *
+     * @param waitedNanos время ожидания в очереди планировщика
+     * @throws BulkheadFullException             если место в квоте не освободилось за maxWait квот
+     * @throws ConcurrencyLimitExceededException если место в ограничителе не освободилось за maxWait ограничителя
+     */
+    public void checkWait(long waitedNanos) {
+        if (bulkheadRefused && waitedNanos >= bulkheads.getMaxWait().toNanos()) {
+            throw bulkheads.reject(operationClass);
+        }
+        if (limiterRefused && waitedNanos >= limiter.getMaxWait().toNanos()) {
+            throw limiter.reject();
+        }
+    }
+
+    /**
+     * Освободить места успешного запроса
+     */
+    public void onSuccess() {
+        try {
+            if (limiter != null) limiter.onSuccess(operation, started);
+        } finally {
+            if (bulkheads != null) bulkheads.release(operationClass);
+        }
+    }
+
+    /**
+     * Освободить места запроса, завершившегося исключением
+     *
+     * @param exception исключение запроса
+     */
+    public void onError(RuntimeException exception) {
+        try {
+            if (limiter != null) limiter.onError(operation, started, exception);
+        } finally {
+            if (bulkheads != null) bulkheads.release(operationClass);
+        }
+    }
+
+    /**
+     * Освободить места запроса, который не был отправлен
+     */
+    public void release() {
+        try {
+            if (limiter != null) limiter.cancel();
+        } finally {
+            if (bulkheads != null) bulkheads.release(operationClass);
+        }
+    }
+}
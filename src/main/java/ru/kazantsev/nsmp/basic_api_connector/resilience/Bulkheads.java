@@ -0,0 +1,209 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.exception.BulkheadFullException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Изоляция классов операций: у каждого {@link OperationClass} своя квота одновременных запросов.
+ * Коннектор увеличивает пул соединений к инсталляции до суммы квот,
+ * поэтому запрос в пределах квоты своего класса всегда получает соединение,
+ * и долгие metainfo или exec не занимают соединения быстрых get и edit.
+ * Запросы сверх квоты ждут до maxWait, после чего завершаются {@link BulkheadFullException}.
+ * {@link ConcurrencyLimiter} и {@link PriorityScheduler} общие для всех классов, поэтому коннектор принимает их
+ * вместе с квотами, только если минимальное ограничение и количество мест больше суммы квот BULK и ADMIN
+ * (см. {@link #getBackgroundQuota()}): тогда тяжелые операции не могут занять все места, и get и edit их не ждут.
+ * Подключается через {@link Connector#setBulkheads(Bulkheads)}
+ */
+public class Bulkheads {
+
+    protected final Map<OperationClass, Integer> quotas;
+    protected final Map<OperationClass, Semaphore> semaphores = new EnumMap<>(OperationClass.class);
+    protected final Map<OperationClass, LongAdder> rejected = new EnumMap<>(OperationClass.class);
+    protected final Map<String, OperationClass> assignments;
+    protected final Duration maxWait;
+
+    protected Bulkheads(Builder builder) {
+        this.quotas = new EnumMap<>(builder.quotas);
+        this.assignments = Map.copyOf(builder.assignments);
+        this.maxWait = builder.maxWait;
+        for (OperationClass operationClass : OperationClass.values()) {
+            semaphores.put(operationClass, new Semaphore(quotas.get(operationClass), true));
+            rejected.put(operationClass, new LongAdder());
+        }
+    }
+
+    /**
+     * Получить конструктор с квотами по умолчанию: INTERACTIVE - 8, BULK - 2, ADMIN - 1, ожидание до 30 с
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Получить класс операции с учетом переназначений
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @return класс операции
+     */
+    public OperationClass classify(String operation) {
+        OperationClass assigned = assignments.get(operation);
+        return assigned != null ? assigned : OperationClass.of(operation);
+    }
+
+    /**
+     * Занять место в квоте класса операции, при необходимости дождавшись его, но не дольше срока из {@link RequestContext}
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @return класс операции, передается в {@link #release(OperationClass)}
+     * @throws BulkheadFullException     если место не освободилось за maxWait
+     * @throws DeadlineExceededException если место не освободилось до срока выполнения
+     */
+    public OperationClass acquire(String operation) {
+        OperationClass operationClass = classify(operation);
+        RequestContext context = RequestContext.current();
+        try {
+            if (!semaphores.get(operationClass).tryAcquire(context.limitWait(maxWait).toNanos(), TimeUnit.NANOSECONDS)) {
+                if (context.isExpired()) throw new DeadlineExceededException(operation);
+                throw reject(operationClass);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestProcessException(e);
+        }
+        return operationClass;
+    }
+
+    /**
+     * Занять место в квоте класса операции без ожидания
+     *
+     * @param operationClass класс операции
+     * @return true если место занято, тогда его нужно освободить через {@link #release(OperationClass)}
+     */
+    public boolean tryAcquire(OperationClass operationClass) {
+        return semaphores.get(operationClass).tryAcquire();
+    }
+
+    /**
+     * Учесть запрос, не дождавшийся места в квоте
+     *
+     * @param operationClass класс операции
+     * @return исключение для запроса
+     */
+    protected BulkheadFullException reject(OperationClass operationClass) {
+        rejected.get(operationClass).increment();
+        return new BulkheadFullException(operationClass, quotas.get(operationClass));
+    }
+
+    /**
+     * Освободить место в квоте
+     *
+     * @param operationClass результат {@link #acquire(String)}
+     */
+    public void release(OperationClass operationClass) {
+        semaphores.get(operationClass).release();
+    }
+
+    /**
+     * Получить квоту класса операций
+     */
+    @SuppressWarnings("unused")
+    public int getQuota(OperationClass operationClass) {
+        return quotas.get(operationClass);
+    }
+
+    /**
+     * Получить максимальное ожидание места в квоте
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Получить сумму квот всех классов
+     */
+    public int getTotalQuota() {
+        int total = 0;
+        for (int quota : quotas.values()) total += quota;
+        return total;
+    }
+
+    /**
+     * Получить сумму квот классов BULK и ADMIN - наибольшее количество мест,
+     * которое тяжелые операции могут занять в общих для всех классов ограничителе и планировщике
+     */
+    public int getBackgroundQuota() {
+        return getTotalQuota() - quotas.get(OperationClass.INTERACTIVE);
+    }
+
+    /**
+     * Получить количество выполняющихся запросов класса операций
+     */
+    @SuppressWarnings("unused")
+    public int getInFlight(OperationClass operationClass) {
+        return quotas.get(operationClass) - semaphores.get(operationClass).availablePermits();
+    }
+
+    /**
+     * Получить количество запросов класса операций, не дождавшихся места
+     */
+    @SuppressWarnings("unused")
+    public long getRejected(OperationClass operationClass) {
+        return rejected.get(operationClass).sum();
+    }
+
+    /**
+     * Конструктор квот
+     */
+    @SuppressWarnings("unused")
+    public static class Builder {
+        protected final Map<OperationClass, Integer> quotas = new EnumMap<>(Map.of(
+                OperationClass.INTERACTIVE, 8,
+                OperationClass.BULK, 2,
+                OperationClass.ADMIN, 1
+        ));
+        protected final Map<String, OperationClass> assignments = new HashMap<>();
+        protected Duration maxWait = Duration.ofSeconds(30);
+
+        /**
+         * Квота одновременных запросов класса операций
+         */
+        public Builder quota(OperationClass operationClass, int maxConcurrent) {
+            if (maxConcurrent <= 0) throw new IllegalArgumentException("maxConcurrent must be positive");
+            quotas.put(operationClass, maxConcurrent);
+            return this;
+        }
+
+        /**
+         * Переназначить класс операции, например, отнести find к BULK
+         *
+         * @param operation      операция (PATH_SEGMENT)
+         * @param operationClass класс операции
+         */
+        public Builder assign(String operation, OperationClass operationClass) {
+            assignments.put(operation, operationClass);
+            return this;
+        }
+
+        /**
+         * Максимальное ожидание места в квоте, Duration.ZERO - сразу отклонять запросы сверх квоты
+         */
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        public Bulkheads build() {
+            return new Bulkheads(this);
+        }
+    }
+}
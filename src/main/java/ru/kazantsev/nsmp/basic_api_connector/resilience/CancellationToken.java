@@ -0,0 +1,77 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Отмена запросов коннектора из другого потока.
+ * Токен передается в запросы через {@link RequestContext#withCancellation(CancellationToken)}.
+ * {@link #cancel()} прерывает выполняющиеся запросы: соединение закрывается и сразу освобождается в пуле,
+ * а вызовы коннектора завершаются {@link RequestCancelledException}.
+ * Запросы, которые еще ждут очереди или паузы перед повтором, завершаются перед отправкой
+ */
+public class CancellationToken {
+
+    protected final Set<HttpUriRequestBase> requests = Collections.newSetFromMap(new IdentityHashMap<>());
+    protected boolean cancelled;
+
+    /**
+     * Отменить выполняющиеся и все последующие запросы с этим токеном
+     */
+    public void cancel() {
+        List<HttpUriRequestBase> inFlight;
+        synchronized (this) {
+            if (cancelled) return;
+            cancelled = true;
+            inFlight = new ArrayList<>(requests);
+            requests.clear();
+        }
+        for (HttpUriRequestBase request : inFlight) request.cancel();
+    }
+
+    /**
+     * Отменен ли токен
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Проверить отмену перед запросом
+     *
+     * @throws RequestCancelledException если токен отменен
+     */
+    public void throwIfCancelled() {
+        if (isCancelled()) throw new RequestCancelledException();
+    }
+
+    /**
+     * Зарегистрировать выполняющийся запрос. Если токен уже отменен, запрос отменяется сразу
+     *
+     * @param request запрос
+     */
+    public void register(HttpUriRequestBase request) {
+        synchronized (this) {
+            if (!cancelled) {
+                requests.add(request);
+                return;
+            }
+        }
+        request.cancel();
+    }
+
+    /**
+     * Снять регистрацию завершившегося запроса
+     *
+     * @param request запрос
+     */
+    public synchronized void unregister(HttpUriRequestBase request) {
+        requests.remove(request);
+    }
+}
@@ -0,0 +1,253 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.exception.BadResponseException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.BulkheadFullException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.CircuitOpenException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.ConcurrencyLimitExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.ResponseReadException;
+
+import java.time.Duration;
+
+/**
+ * Предохранитель запросов к инсталляции.
+ * В замкнутом состоянии (CLOSED) запросы проходят, их результаты копятся в скользящем окне из последних windowSize запросов.
+ * Когда в окне набирается не меньше minimumCalls запросов и доля отказов достигает failureRateThreshold,
+ * предохранитель размыкается (OPEN): запросы сразу завершаются {@link CircuitOpenException}, не дожидаясь таймаутов.
+ * Через openDuration предохранитель пропускает probes пробных запросов (HALF_OPEN): если все они успешны,
+ * он снова замыкается, при первом отказе снова размыкается.
+ * Отказом считаются ошибки передачи и ответы со статусом 5xx, остальные ответы означают, что инсталляция доступна.
+ * Отмена, истечение срока вызывающего и отказ в месте в очередях коннектора ничего не говорят о доступности инсталляции:
+ * такие запросы не попадают в окно, а пробный запрос освобождает место для следующего пробного.
+ * Один экземпляр можно подключить к нескольким коннекторам одной инсталляции через {@link Connector#setCircuitBreaker(CircuitBreaker)}
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    protected static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    protected final double failureRateThreshold;
+    protected final int minimumCalls;
+    protected final Duration openDuration;
+    protected final int probes;
+
+    /**
+     * Результаты последних запросов, true - отказ
+     */
+    protected final boolean[] window;
+    protected int windowIndex;
+    protected int windowCount;
+    protected int windowFailures;
+
+    protected State state = State.CLOSED;
+    /**
+     * Номер состояния, увеличивается при каждом переходе. Результаты запросов, начатых в другом состоянии, не учитываются
+     */
+    protected long generation;
+    protected long openedAt;
+    protected int probesStarted;
+    protected int probesSucceeded;
+
+    protected CircuitBreaker(Builder builder) {
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.minimumCalls = builder.minimumCalls;
+        this.openDuration = builder.openDuration;
+        this.probes = builder.probes;
+        this.window = new boolean[builder.windowSize];
+    }
+
+    /**
+     * Получить конструктор предохранителя с настройками по умолчанию:
+     * окно 20 запросов, не меньше 10 запросов для оценки, порог отказов 50%, размыкание на 30 с, 1 пробный запрос
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Получить разрешение на запрос
+     *
+     * @return разрешение, передается в {@link #onSuccess(long)} или {@link #onError(long, RuntimeException)}
+     * @throws CircuitOpenException если предохранитель разомкнут или все пробные запросы уже выполняются
+     */
+    public synchronized long acquire() {
+        if (state == State.OPEN) {
+            long remaining = openedAt + openDuration.toMillis() - now();
+            if (remaining > 0) throw new CircuitOpenException(Duration.ofMillis(remaining));
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted >= probes) throw new CircuitOpenException(Duration.ZERO);
+            probesStarted++;
+        }
+        return generation;
+    }
+
+    /**
+     * Учесть успешный запрос
+     *
+     * @param permit разрешение, полученное в {@link #acquire()}
+     */
+    public synchronized void onSuccess(long permit) {
+        record(permit, false);
+    }
+
+    /**
+     * Учесть запрос, завершившийся исключением
+     *
+     * @param permit    разрешение, полученное в {@link #acquire()}
+     * @param exception исключение запроса
+     */
+    public synchronized void onError(long permit, RuntimeException exception) {
+        if (isNeutral(exception)) {
+            //пробный запрос не дал ответа о доступности, его место получит следующий запрос
+            if (permit == generation && state == State.HALF_OPEN) probesStarted--;
+            return;
+        }
+        record(permit, isFailure(exception));
+    }
+
+    /**
+     * Получить текущее состояние
+     */
+    @SuppressWarnings("unused")
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Принудительно замкнуть предохранитель и очистить окно
+     */
+    @SuppressWarnings("unused")
+    public synchronized void reset() {
+        transition(State.CLOSED);
+    }
+
+    /**
+     * Является ли исключение признаком недоступности инсталляции
+     */
+    public boolean isFailure(RuntimeException exception) {
+        if (exception instanceof BadResponseException badResponse) {
+            return badResponse.getResponseSnapshot().getStatus() >= 500;
+        }
+        return exception instanceof RequestProcessException || exception instanceof ResponseReadException;
+    }
+
+    /**
+     * Завершился ли запрос без ответа о доступности инсталляции: отменен, истек срок вызывающего
+     * или не дождался места в очередях коннектора
+     */
+    public boolean isNeutral(RuntimeException exception) {
+        return exception instanceof RequestCancelledException
+                || exception instanceof DeadlineExceededException
+                || exception instanceof BulkheadFullException
+                || exception instanceof ConcurrencyLimitExceededException;
+    }
+
+    protected void record(long permit, boolean failure) {
+        if (permit != generation) return;
+        if (state == State.HALF_OPEN) {
+            if (failure) {
+                transition(State.OPEN);
+            } else if (++probesSucceeded >= probes) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state != State.CLOSED) return;
+        if (windowCount == window.length) {
+            if (window[windowIndex]) windowFailures--;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) windowFailures++;
+        windowIndex = (windowIndex + 1) % window.length;
+        if (windowCount >= minimumCalls && windowFailures >= failureRateThreshold * windowCount) {
+            transition(State.OPEN);
+        }
+    }
+
+    protected void transition(State target) {
+        logger.warn("Circuit breaker state changed: {} -> {}", state, target);
+        state = target;
+        generation++;
+        probesStarted = 0;
+        probesSucceeded = 0;
+        if (target == State.OPEN) openedAt = now();
+        if (target == State.CLOSED) {
+            windowIndex = 0;
+            windowCount = 0;
+            windowFailures = 0;
+        }
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Конструктор предохранителя
+     */
+    @SuppressWarnings("unused")
+    public static class Builder {
+        protected double failureRateThreshold = 0.5;
+        protected int windowSize = 20;
+        protected int minimumCalls = 10;
+        protected Duration openDuration = Duration.ofSeconds(30);
+        protected int probes = 1;
+
+        /**
+         * Доля отказов в окне от 0 до 1, при которой предохранитель размыкается
+         */
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+                throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]");
+            }
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * Размер скользящего окна и минимальное количество запросов в нем для оценки доли отказов
+         */
+        public Builder window(int windowSize, int minimumCalls) {
+            if (windowSize <= 0) throw new IllegalArgumentException("windowSize must be positive");
+            if (minimumCalls <= 0 || minimumCalls > windowSize) {
+                throw new IllegalArgumentException("minimumCalls must be between 1 and windowSize");
+            }
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * Время, которое предохранитель остается разомкнутым до пробных запросов
+         */
+        public Builder openDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * Количество пробных запросов, которые должны пройти успешно для замыкания
+         */
+        public Builder probes(int probes) {
+            if (probes <= 0) throw new IllegalArgumentException("probes must be positive");
+            this.probes = probes;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
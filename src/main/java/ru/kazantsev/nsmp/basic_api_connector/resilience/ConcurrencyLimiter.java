@@ -0,0 +1,292 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.exception.BadResponseException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.ConcurrencyLimitExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Адаптивное ограничение количества одновременных запросов к инсталляции (AIMD).
+ * Ограничение растет на 1 за каждые limit успешных запросов, если оно было использовано хотя бы наполовину,
+ * и умножается на backoffRatio при признаке перегрузки: таймаут ответа, статус 429, 503 или 504,
+ * либо рост времени ответа операции: краткосрочное среднее больше latencyTolerance * долгосрочное среднее.
+ * Средние считаются отдельно по операциям, поэтому быстрые get и медленные exec не смешиваются,
+ * а оценка по времени начинается после WARMUP_SAMPLES ответов операции.
+ * После уменьшения ограничения признаки перегрузки запросов, начатых до уменьшения, не учитываются.
+ * Запросы сверх ограничения ждут в очереди до maxWait, после чего завершаются {@link ConcurrencyLimitExceededException}.
+ * Подключается через {@link Connector#setConcurrencyLimiter(ConcurrencyLimiter)}.
+ * Количество одновременных запросов также ограничено пулом соединений клиента (по умолчанию 5 на хост)
+ */
+public class ConcurrencyLimiter {
+
+    protected static final Set<Integer> OVERLOAD_STATUSES = Set.of(429, 503, 504);
+    protected static final double SHORT_TERM_WEIGHT = 0.2;
+    protected static final double LONG_TERM_WEIGHT = 0.01;
+    protected static final int WARMUP_SAMPLES = 10;
+
+    protected final int minLimit;
+    protected final int maxLimit;
+    protected final double backoffRatio;
+    protected final double latencyTolerance;
+    protected final Duration maxWait;
+
+    protected double limit;
+    protected int inFlight;
+    protected long lastDecrease = Long.MIN_VALUE;
+    protected final Map<String, Latency> latencies = new HashMap<>();
+
+    protected final LongAdder rejected = new LongAdder();
+
+    protected ConcurrencyLimiter(Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.latencyTolerance = builder.latencyTolerance;
+        this.maxWait = builder.maxWait;
+        this.limit = builder.initialLimit;
+    }
+
+    /**
+     * Получить конструктор ограничителя с настройками по умолчанию:
+     * начальное ограничение 4, от 1 до 20, уменьшение в 0.9 раза, допустимый рост времени ответа в 2 раза, ожидание до 30 с
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Занять место для запроса, при необходимости дождавшись его, но не дольше срока из {@link RequestContext}
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @return время начала запроса в нс, передается в onSuccess/onError
+     * @throws ConcurrencyLimitExceededException если место не освободилось за maxWait
+     * @throws DeadlineExceededException         если место не освободилось до срока выполнения
+     */
+    public synchronized long acquire(String operation) {
+        RequestContext context = RequestContext.current();
+        long deadline = now() + context.limitWait(maxWait).toNanos();
+        while (inFlight >= getLimit()) {
+            long remaining = deadline - now();
+            if (remaining <= 0) {
+                if (context.isExpired()) throw new DeadlineExceededException(operation);
+                throw reject();
+            }
+            try {
+                wait(Math.max(1, remaining / 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RequestProcessException(e);
+            }
+        }
+        inFlight++;
+        return now();
+    }
+
+    /**
+     * Занять место для запроса без ожидания
+     *
+     * @return true если место занято, время начала запроса тогда берется из {@link #now()}
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= getLimit()) return false;
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Освободить место запроса, который не был отправлен
+     */
+    public synchronized void cancel() {
+        release();
+    }
+
+    /**
+     * Учесть запрос, не дождавшийся места
+     *
+     * @return исключение для запроса
+     */
+    protected ConcurrencyLimitExceededException reject() {
+        rejected.increment();
+        return new ConcurrencyLimitExceededException(getLimit());
+    }
+
+    /**
+     * Освободить место успешного запроса и учесть время ответа
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @param started   результат {@link #acquire(String)}
+     */
+    public synchronized void onSuccess(String operation, long started) {
+        long now = now();
+        Latency latency = latencies.computeIfAbsent(operation, key -> new Latency());
+        latency.add(now - started);
+        if (latency.samples > WARMUP_SAMPLES && latency.shortTerm > latency.longTerm * latencyTolerance) {
+            decrease(started, now);
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        release();
+    }
+
+    /**
+     * Освободить место запроса, завершившегося исключением
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @param started   результат {@link #acquire(String)}
+     * @param exception исключение запроса
+     */
+    public synchronized void onError(String operation, long started, RuntimeException exception) {
+        if (isOverload(exception)) decrease(started, now());
+        release();
+    }
+
+    /**
+     * Получить текущее ограничение
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Получить максимальное ожидание места
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Получить минимальное ограничение
+     */
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * Получить количество выполняющихся запросов
+     */
+    @SuppressWarnings("unused")
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Получить количество запросов, не дождавшихся места
+     */
+    @SuppressWarnings("unused")
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Является ли исключение признаком перегрузки инсталляции
+     */
+    public boolean isOverload(RuntimeException exception) {
+        if (exception instanceof BadResponseException badResponse) {
+            return OVERLOAD_STATUSES.contains(badResponse.getResponseSnapshot().getStatus());
+        }
+        //ConnectTimeoutException - наследник SocketTimeoutException, но говорит о недоступности, а не о перегрузке
+        return exception instanceof RequestProcessException
+                && exception.getCause() instanceof SocketTimeoutException
+                && !(exception.getCause() instanceof ConnectTimeoutException);
+    }
+
+    protected void decrease(long started, long now) {
+        //одна перегрузка обычно затрагивает все выполняющиеся запросы, уменьшаем один раз
+        if (started < lastDecrease) return;
+        lastDecrease = now;
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    protected void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Краткосрочное и долгосрочное экспоненциальное среднее времени ответа операции
+     */
+    protected static class Latency {
+        protected long samples;
+        protected double shortTerm;
+        protected double longTerm;
+
+        protected void add(long nanos) {
+            if (samples++ == 0) {
+                shortTerm = nanos;
+                longTerm = nanos;
+                return;
+            }
+            shortTerm += (nanos - shortTerm) * SHORT_TERM_WEIGHT;
+            longTerm += (nanos - longTerm) * LONG_TERM_WEIGHT;
+        }
+    }
+
+    /**
+     * Конструктор ограничителя
+     */
+    @SuppressWarnings("unused")
+    public static class Builder {
+        protected int initialLimit = 4;
+        protected int minLimit = 1;
+        protected int maxLimit = 20;
+        protected double backoffRatio = 0.9;
+        protected double latencyTolerance = 2;
+        protected Duration maxWait = Duration.ofSeconds(30);
+
+        /**
+         * Начальное, минимальное и максимальное ограничение
+         */
+        public Builder limit(int initialLimit, int minLimit, int maxLimit) {
+            if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("Limits must satisfy 0 < minLimit <= initialLimit <= maxLimit");
+            }
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Множитель ограничения при перегрузке, от 0 до 1
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            if (backoffRatio <= 0 || backoffRatio >= 1) throw new IllegalArgumentException("backoffRatio must be in (0, 1)");
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Во сколько раз время ответа может превышать базовое, прежде чем считаться признаком перегрузки
+         */
+        public Builder latencyTolerance(double latencyTolerance) {
+            if (latencyTolerance <= 1) throw new IllegalArgumentException("latencyTolerance must be greater than 1");
+            this.latencyTolerance = latencyTolerance;
+            return this;
+        }
+
+        /**
+         * Максимальное ожидание места, Duration.ZERO - сразу отклонять запросы сверх ограничения
+         */
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        public ConcurrencyLimiter build() {
+            return new ConcurrencyLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Дублирование медленных запросов чтения для сокращения хвоста времени ответа.
+ * Если ответ на запрос не пришел за время задержки, отправляется второй такой же запрос,
+ * используется первый успешный ответ, а оставшийся запрос отменяется.
+ * Задержка - перцентиль времени ответа операции (по умолчанию p95), до набора minSamples ответов - fallbackDelay.
+ * Дополнительная нагрузка ограничена бюджетом: каждый запрос пополняет его на budgetRatio, каждый дубль тратит единицу.
+ * Дублируются только get и find, подключается через {@link Connector#setHedgingPolicy(HedgingPolicy)}
+ */
+public class HedgingPolicy {
+
+    public static final Set<String> DEFAULT_OPERATIONS = Set.of("get", "find");
+
+    protected final Set<String> operations;
+    protected final double quantile;
+    protected final int minSamples;
+    protected final Duration fallbackDelay;
+    protected final Duration minDelay;
+    protected final double budgetRatio;
+    protected final double budgetMax;
+    protected final LatencyTracker latencyTracker;
+    protected final ExecutorService executor;
+
+    protected double budget;
+    protected final LongAdder hedged = new LongAdder();
+    protected final LongAdder hedgeWins = new LongAdder();
+
+    protected HedgingPolicy(Builder builder) {
+        this.operations = Set.copyOf(builder.operations);
+        this.quantile = builder.quantile;
+        this.minSamples = builder.minSamples;
+        this.fallbackDelay = builder.fallbackDelay;
+        this.minDelay = builder.minDelay;
+        this.budgetRatio = builder.budgetRatio;
+        this.budgetMax = builder.budgetMax;
+        this.budget = builder.budgetMax;
+        this.latencyTracker = new LatencyTracker(builder.windowSize);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "nsmp-hedging-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Получить конструктор политики с настройками по умолчанию:
+     * get и find, задержка p95 по последним 500 ответам (не меньше 20 мс, до 20 ответов - 500 мс),
+     * бюджет 10 дублей с пополнением 0.05 за запрос (не больше 5% дополнительных запросов)
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Дублируется ли операция
+     *
+     * @param operation операция (PATH_SEGMENT)
+     */
+    public boolean isHedged(String operation) {
+        return operations.contains(operation);
+    }
+
+    /**
+     * Выполнить запрос с дублированием
+     *
+     * @param operation      операция (PATH_SEGMENT)
+     * @param requestFactory создание нового экземпляра запроса, у каждого дубля свой экземпляр
+     * @param call           выполнение запроса
+     * @param <T>            тип результата
+     * @return первый успешный результат
+     */
+    public <T> T execute(String operation, Supplier<? extends HttpUriRequestBase> requestFactory, Function<HttpUriRequestBase, T> call) {
+        synchronized (this) {
+            budget = Math.min(budgetMax, budget + budgetRatio);
+        }
+        Race<T> race = new Race<>();
+        HttpUriRequestBase primary = requestFactory.get();
+        HttpUriRequestBase hedge = null;
+        CompletableFuture<T> primaryFuture = start(operation, primary, call, race, false);
+        CompletableFuture<T> hedgeFuture = null;
+        try {
+            try {
+                return race.winner.get(hedgeDelay(operation).toNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (!tryAcquireBudget()) return race.winner.get();
+            }
+            hedge = requestFactory.get();
+            hedged.increment();
+            hedgeFuture = start(operation, hedge, call, race, true);
+            return race.winner.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestProcessException(e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } finally {
+            //проигравший запрос отменяется
+            if (!primaryFuture.isDone()) primary.cancel();
+            if (hedgeFuture != null && !hedgeFuture.isDone()) hedge.cancel();
+        }
+    }
+
+    /**
+     * Получить задержку перед отправкой дубля для операции
+     */
+    public Duration hedgeDelay(String operation) {
+        Duration percentile = latencyTracker.percentile(operation, quantile, minSamples);
+        Duration delay = percentile != null ? percentile : fallbackDelay;
+        return delay.compareTo(minDelay) < 0 ? minDelay : delay;
+    }
+
+    /**
+     * Получить количество отправленных дублей
+     */
+    @SuppressWarnings("unused")
+    public long getHedged() {
+        return hedged.sum();
+    }
+
+    /**
+     * Получить количество запросов, в которых дубль ответил первым
+     */
+    @SuppressWarnings("unused")
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * Получить статистику времени ответа, по которой выбирается задержка
+     */
+    @SuppressWarnings("unused")
+    public LatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+
+    protected synchronized boolean tryAcquireBudget() {
+        if (budget < 1) return false;
+        budget -= 1;
+        return true;
+    }
+
+    /**
+     * Запустить попытку: первый успешный результат завершает гонку, ошибка - только если ошибкой завершились все начатые попытки
+     */
+    protected <T> CompletableFuture<T> start(
+            String operation,
+            HttpUriRequestBase request,
+            Function<HttpUriRequestBase, T> call,
+            Race<T> race,
+            boolean hedge
+    ) {
+        race.started.incrementAndGet();
+        RequestContext context = RequestContext.current();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> context.call(() -> {
+            long started = System.nanoTime();
+            T result = call.apply(request);
+            latencyTracker.record(operation, Duration.ofNanos(System.nanoTime() - started));
+            return result;
+        }), executor);
+        future.whenComplete((result, error) -> {
+            synchronized (race) {
+                if (race.winner.isDone()) return;
+                if (error == null) {
+                    if (hedge) hedgeWins.increment();
+                    race.winner.complete(result);
+                } else if (race.failed.incrementAndGet() >= race.started.get()) {
+                    race.winner.completeExceptionally(error);
+                }
+            }
+        });
+        return future;
+    }
+
+    protected static RuntimeException unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        if (error instanceof RuntimeException runtimeException) return runtimeException;
+        return new RequestProcessException(error);
+    }
+
+    protected static class Race<T> {
+        protected final CompletableFuture<T> winner = new CompletableFuture<>();
+        protected final AtomicInteger started = new AtomicInteger();
+        protected final AtomicInteger failed = new AtomicInteger();
+    }
+
+    /**
+     * Конструктор политики дублирования
+     */
+    @SuppressWarnings("unused")
+    public static class Builder {
+        protected Set<String> operations = DEFAULT_OPERATIONS;
+        protected double quantile = 0.95;
+        protected int minSamples = 20;
+        protected int windowSize = 500;
+        protected Duration fallbackDelay = Duration.ofMillis(500);
+        protected Duration minDelay = Duration.ofMillis(20);
+        protected double budgetRatio = 0.05;
+        protected double budgetMax = 10;
+
+        /**
+         * Дублируемые операции, поддерживаются get и find
+         */
+        public Builder operations(Set<String> operations) {
+            this.operations = operations;
+            return this;
+        }
+
+        /**
+         * Перцентиль времени ответа, после которого отправляется дубль, и количество последних ответов для его оценки
+         */
+        public Builder percentile(double quantile, int minSamples, int windowSize) {
+            if (quantile <= 0 || quantile >= 1) throw new IllegalArgumentException("quantile must be in (0, 1)");
+            this.quantile = quantile;
+            this.minSamples = minSamples;
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * Задержка, пока ответов недостаточно для оценки перцентиля, и минимальная задержка
+         */
+        public Builder delay(Duration fallbackDelay, Duration minDelay) {
+            this.fallbackDelay = fallbackDelay;
+            this.minDelay = minDelay;
+            return this;
+        }
+
+        /**
+         * Бюджет дублей: максимальный запас и пополнение за каждый запрос (доля дополнительных запросов)
+         */
+        public Builder budget(double budgetMax, double budgetRatio) {
+            this.budgetMax = budgetMax;
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Время ответа последних запросов по операциям для оценки перцентилей
+ */
+public class LatencyTracker {
+
+    protected final int windowSize;
+    protected final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * @param windowSize количество последних запросов операции, по которым считаются перцентили
+     */
+    public LatencyTracker(int windowSize) {
+        if (windowSize <= 0) throw new IllegalArgumentException("windowSize must be positive");
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Учесть время ответа
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @param latency   время ответа
+     */
+    public void record(String operation, Duration latency) {
+        windows.computeIfAbsent(operation, key -> new Window(windowSize)).add(latency.toNanos());
+    }
+
+    /**
+     * Получить перцентиль времени ответа операции
+     *
+     * @param operation  операция (PATH_SEGMENT)
+     * @param quantile   квантиль от 0 до 1, например 0.95
+     * @param minSamples минимальное количество запросов для оценки
+     * @return перцентиль, null если запросов меньше minSamples
+     */
+    public Duration percentile(String operation, double quantile, int minSamples) {
+        Window window = windows.get(operation);
+        if (window == null) return null;
+        long[] samples = window.snapshot();
+        if (samples.length < Math.max(1, minSamples)) return null;
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(quantile * samples.length) - 1;
+        return Duration.ofNanos(samples[Math.min(samples.length - 1, Math.max(0, index))]);
+    }
+
+    protected static class Window {
+        protected final long[] samples;
+        protected int index;
+        protected int count;
+
+        protected Window(int size) {
+            this.samples = new long[size];
+        }
+
+        protected synchronized void add(long nanos) {
+            samples[index] = nanos;
+            index = (index + 1) % samples.length;
+            if (count < samples.length) count++;
+        }
+
+        protected synchronized long[] snapshot() {
+            return Arrays.copyOf(samples, count);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import java.util.Set;
+
+/**
+ * Класс операции API для изоляции запросов в {@link Bulkheads}
+ */
+public enum OperationClass {
+
+    /**
+     * Быстрые операции с отдельными объектами: get, find, create, edit, delete и т.д.,
+     * а также легкие запросы smpsync: version, groovy_version, jpda_info, scripts/status
+     */
+    INTERACTIVE,
+
+    /**
+     * Скрипты и массовые операции: exec, exec-post, create-m2m-multiple
+     */
+    BULK,
+
+    /**
+     * Долгие передачи smpsync: выгрузка и загрузка метаинформации и скриптов
+     */
+    ADMIN;
+
+    protected static final Set<String> BULK_OPERATIONS = Set.of("exec", "exec-post", "create-m2m-multiple");
+    protected static final Set<String> ADMIN_OPERATIONS = Set.of("metainfo", "upload-metainfo", "scripts");
+
+    /**
+     * Получить класс операции по умолчанию
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @return класс операции, INTERACTIVE для всех операций, кроме массовых и долгих передач smpsync
+     */
+    public static OperationClass of(String operation) {
+        if (BULK_OPERATIONS.contains(operation)) return BULK;
+        if (ADMIN_OPERATIONS.contains(operation)) return ADMIN;
+        return INTERACTIVE;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+/**
+ * Приоритет запроса в {@link PriorityScheduler}, задается через {@link RequestContext}
+ */
+public enum Priority {
+
+    /**
+     * Запросы, которых ждет пользователь
+     */
+    HIGH,
+
+    /**
+     * Приоритет по умолчанию
+     */
+    NORMAL,
+
+    /**
+     * Фоновые выгрузки и массовая обработка
+     */
+    LOW
+}
@@ -0,0 +1,222 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.exception.BulkheadFullException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.ConcurrencyLimitExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Планировщик доступа к соединениям с инсталляцией по приоритетам.
+ * Одновременно выполняется не больше permits запросов, остальные ждут в очереди.
+ * Освободившееся место получает запрос с наименьшим ключом: время постановки в очередь + номер приоритета * aging,
+ * то есть LOW обгоняет HIGH, если ждет дольше на 2 * aging, и фоновые запросы не голодают.
+ * Если у запроса есть места в квоте и ограничителе ({@link Admission}), планировщик занимает их без ожидания
+ * в момент выдачи места, а запрос, для которого они заняты, пропускает вперед следующий по очереди.
+ * Так планировщик - единственная очередь запроса, и приоритеты не теряются в очередях квот и ограничителя.
+ * Приоритет запроса берется из {@link RequestContext}, ожидание ограничено сроком выполнения и прерывается отменой
+ * токена из контекста, время ожидания в очереди учитывается по приоритетам.
+ * Подключается через {@link Connector#setPriorityScheduler(PriorityScheduler)}
+ */
+public class PriorityScheduler {
+
+    protected static final Logger logger = LoggerFactory.getLogger(PriorityScheduler.class);
+    /**
+     * Период проверки отмены, срока и мест, освобожденных запросами других коннекторов
+     */
+    protected static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    protected final int permits;
+    protected final long agingNanos;
+
+    protected int available;
+    protected long sequence;
+    protected final TreeSet<Waiter> queue = new TreeSet<>(
+            Comparator.comparingLong((Waiter waiter) -> waiter.key).thenComparingLong(waiter -> waiter.sequence)
+    );
+
+    protected final Map<Priority, LongAdder> waits = new EnumMap<>(Priority.class);
+    protected final Map<Priority, LongAdder> waitNanos = new EnumMap<>(Priority.class);
+    protected final Map<Priority, LongAccumulator> maxWaitNanos = new EnumMap<>(Priority.class);
+
+    /**
+     * @param permits количество одновременных запросов
+     * @param aging   время ожидания, за которое запрос поднимается на один приоритет
+     */
+    public PriorityScheduler(int permits, Duration aging) {
+        if (permits <= 0) throw new IllegalArgumentException("permits must be positive");
+        this.permits = permits;
+        this.available = permits;
+        this.agingNanos = aging.toNanos();
+        for (Priority priority : Priority.values()) {
+            waits.put(priority, new LongAdder());
+            waitNanos.put(priority, new LongAdder());
+            maxWaitNanos.put(priority, new LongAccumulator(Math::max, 0));
+        }
+    }
+
+    /**
+     * Дождаться места для запроса с приоритетом из контекста текущего потока, но не дольше срока из контекста
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @return приоритет запроса
+     * @throws DeadlineExceededException если место не освободилось до срока выполнения
+     * @throws RequestCancelledException если токен из контекста отменен во время ожидания
+     */
+    public Priority acquire(String operation) {
+        return acquire(operation, new Admission(operation, null, null));
+    }
+
+    /**
+     * Дождаться места для запроса с приоритетом из контекста текущего потока, но не дольше срока из контекста,
+     * заняв вместе с ним места запроса в квоте и ограничителе
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @param admission места запроса в квоте и ограничителе, после запроса освобождаются вызывающим
+     * @return приоритет запроса
+     * @throws DeadlineExceededException         если место не освободилось до срока выполнения
+     * @throws RequestCancelledException         если токен из контекста отменен во время ожидания
+     * @throws BulkheadFullException             если место в квоте не освободилось за maxWait квот
+     * @throws ConcurrencyLimitExceededException если место в ограничителе не освободилось за maxWait ограничителя
+     */
+    public Priority acquire(String operation, Admission admission) {
+        RequestContext context = RequestContext.current();
+        Priority priority = context.getPriority();
+        long started = System.nanoTime();
+        boolean queued = false;
+        synchronized (this) {
+            if (available > 0 && queue.isEmpty() && admission.tryAcquire()) {
+                available--;
+            } else {
+                queued = true;
+                Waiter waiter = new Waiter(started + priority.ordinal() * agingNanos, sequence++, admission);
+                queue.add(waiter);
+                try {
+                    dispatch();
+                    while (!waiter.granted) {
+                        try {
+                            context.check(operation);
+                            admission.checkWait(System.nanoTime() - started);
+                        } catch (RuntimeException e) {
+                            queue.remove(waiter);
+                            throw e;
+                        }
+                        long waitNanos = POLL_NANOS;
+                        Duration remaining = context.getRemaining();
+                        if (remaining != null) waitNanos = Math.max(1, Math.min(waitNanos, remaining.toNanos()));
+                        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                        //места в ограничителе могли освободить запросы других коннекторов
+                        if (!waiter.granted) dispatch();
+                    }
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        admission.release();
+                        release();
+                    } else {
+                        queue.remove(waiter);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new RequestProcessException(e);
+                }
+            }
+        }
+        long waited = System.nanoTime() - started;
+        waits.get(priority).increment();
+        waitNanos.get(priority).add(waited);
+        maxWaitNanos.get(priority).accumulate(waited);
+        if (queued) logger.debug("{} request waited {} ms for a connection", priority, waited / 1_000_000);
+        return priority;
+    }
+
+    /**
+     * Освободить место, передав его следующему запросу из очереди.
+     * Места запроса в квоте и ограничителе освобождаются до вызова, чтобы их мог занять следующий запрос
+     */
+    public synchronized void release() {
+        available++;
+        dispatch();
+    }
+
+    /**
+     * Выдать свободные места первым по очереди запросам, для которых удалось занять места в квоте и ограничителе
+     */
+    protected void dispatch() {
+        boolean granted = false;
+        Iterator<Waiter> iterator = queue.iterator();
+        while (available > 0 && iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            if (!waiter.admission.tryAcquire()) continue;
+            iterator.remove();
+            waiter.granted = true;
+            available--;
+            granted = true;
+        }
+        if (granted) notifyAll();
+    }
+
+    /**
+     * Получить количество одновременных запросов
+     */
+    public int getPermits() {
+        return permits;
+    }
+
+    /**
+     * Получить количество запросов в очереди
+     */
+    @SuppressWarnings("unused")
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * Получить среднее время ожидания запросов приоритета
+     */
+    @SuppressWarnings("unused")
+    public Duration getAverageWait(Priority priority) {
+        long count = waits.get(priority).sum();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(waitNanos.get(priority).sum() / count);
+    }
+
+    /**
+     * Получить максимальное время ожидания запросов приоритета
+     */
+    @SuppressWarnings("unused")
+    public Duration getMaxWait(Priority priority) {
+        return Duration.ofNanos(maxWaitNanos.get(priority).get());
+    }
+
+    /**
+     * Получить количество запросов приоритета, прошедших через планировщик
+     */
+    @SuppressWarnings("unused")
+    public long getRequests(Priority priority) {
+        return waits.get(priority).sum();
+    }
+
+    protected static class Waiter {
+        protected final long key;
+        protected final long sequence;
+        protected final Admission admission;
+        protected boolean granted;
+
+        protected Waiter(long key, long sequence, Admission admission) {
+            this.key = key;
+            this.sequence = sequence;
+            this.admission = admission;
+        }
+    }
+}
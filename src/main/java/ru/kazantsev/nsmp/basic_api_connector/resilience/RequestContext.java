@@ -0,0 +1,230 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Параметры запросов, выполняемых в текущем потоке: приоритет, срок выполнения и токен отмены.
+ * Контекст привязывается к потоку на время выполнения действия, все запросы коннектора внутри действия его используют.
+ * Срок выполнения общий для всех запросов действия: таймаут ответа каждого запроса не больше оставшегося времени,
+ * ожидание в очередях и паузы между повторами не выходят за срок, а после срока запросы сразу завершаются
+ * {@link DeadlineExceededException}, в том числе части массовых операций.
+ * Отмена {@link CancellationToken} прерывает выполняющиеся запросы действия и не дает отправить новые.
+ * Коннектор передает контекст в свои служебные потоки (дублирование запросов, предзагрузка, параллельное создание),
+ * для собственных пулов потоков задачи оборачиваются через {@link #wrap(Runnable)}
+ */
+public final class RequestContext {
+
+    public static final RequestContext DEFAULT = new RequestContext(Priority.NORMAL, null, null);
+
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+
+    private final Priority priority;
+    /**
+     * Срок выполнения по System.nanoTime, null - без срока
+     */
+    private final Long deadlineNanos;
+    /**
+     * Токен отмены, null - запросы не отменяются
+     */
+    private final CancellationToken cancellationToken;
+
+    private RequestContext(Priority priority, Long deadlineNanos, CancellationToken cancellationToken) {
+        this.priority = priority;
+        this.deadlineNanos = deadlineNanos;
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Получить контекст текущего потока
+     *
+     * @return контекст, {@link #DEFAULT} если не задан
+     */
+    public static RequestContext current() {
+        RequestContext context = CURRENT.get();
+        return context != null ? context : DEFAULT;
+    }
+
+    /**
+     * Получить копию контекста с другим приоритетом
+     *
+     * @param priority приоритет запросов
+     * @return новый контекст
+     */
+    public RequestContext withPriority(Priority priority) {
+        return new RequestContext(priority, deadlineNanos, cancellationToken);
+    }
+
+    /**
+     * Получить копию контекста с токеном отмены, токен внешнего контекста заменяется
+     *
+     * @param cancellationToken токен отмены
+     * @return новый контекст
+     */
+    public RequestContext withCancellation(CancellationToken cancellationToken) {
+        return new RequestContext(priority, deadlineNanos, cancellationToken);
+    }
+
+    /**
+     * Получить токен отмены
+     *
+     * @return токен отмены, null если не задан
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * Получить копию контекста со сроком выполнения через timeout.
+     * Срок вложенного контекста не может быть позже срока внешнего
+     *
+     * @param timeout время на выполнение
+     * @return новый контекст
+     */
+    public RequestContext withTimeout(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        if (deadlineNanos != null && deadlineNanos - deadline < 0) deadline = deadlineNanos;
+        return new RequestContext(priority, deadline, cancellationToken);
+    }
+
+    /**
+     * Получить копию контекста со сроком выполнения к моменту времени.
+     * Срок вложенного контекста не может быть позже срока внешнего
+     *
+     * @param deadline момент, к которому запросы должны быть выполнены
+     * @return новый контекст
+     */
+    @SuppressWarnings("unused")
+    public RequestContext withDeadline(Instant deadline) {
+        return withTimeout(Duration.between(Instant.now(), deadline));
+    }
+
+    /**
+     * Получить оставшееся до срока время
+     *
+     * @return оставшееся время, отрицательное после срока, null если срок не задан
+     */
+    public Duration getRemaining() {
+        return deadlineNanos == null ? null : Duration.ofNanos(deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * Истек ли срок выполнения
+     */
+    public boolean isExpired() {
+        return deadlineNanos != null && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Успеет ли пауза закончиться до срока
+     *
+     * @param pause пауза
+     * @return true если срок не задан или оставшееся время больше паузы
+     */
+    public boolean hasTimeFor(Duration pause) {
+        Duration remaining = getRemaining();
+        return remaining == null || remaining.compareTo(pause) > 0;
+    }
+
+    /**
+     * Проверить отмену и срок выполнения перед запросом
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @throws RequestCancelledException если токен отменен
+     * @throws DeadlineExceededException если срок истек
+     */
+    public void check(String operation) {
+        if (cancellationToken != null) cancellationToken.throwIfCancelled();
+        checkDeadline(operation);
+    }
+
+    /**
+     * Проверить срок выполнения перед запросом
+     *
+     * @param operation операция (PATH_SEGMENT)
+     * @throws DeadlineExceededException если срок истек
+     */
+    public void checkDeadline(String operation) {
+        if (isExpired()) throw new DeadlineExceededException(operation);
+    }
+
+    /**
+     * Ограничить ожидание оставшимся до срока временем
+     *
+     * @param wait желаемое ожидание
+     * @return меньшее из ожидания и оставшегося времени, не меньше нуля
+     */
+    public Duration limitWait(Duration wait) {
+        Duration remaining = getRemaining();
+        if (remaining == null || remaining.compareTo(wait) >= 0) return wait;
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    /**
+     * Получить приоритет запросов
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Выполнить действие с этим контекстом, после выполнения восстанавливается прежний контекст потока
+     *
+     * @param action действие
+     * @param <T>    тип результата
+     * @return результат действия
+     */
+    public <T> T call(Supplier<T> action) {
+        RequestContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) CURRENT.set(previous);
+            else CURRENT.remove();
+        }
+    }
+
+    /**
+     * Выполнить действие с этим контекстом, после выполнения восстанавливается прежний контекст потока
+     *
+     * @param action действие
+     */
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Обернуть задачу так, чтобы она выполнялась с контекстом текущего потока
+     */
+    @SuppressWarnings("unused")
+    public static Runnable wrap(Runnable task) {
+        RequestContext context = current();
+        return () -> context.run(task);
+    }
+
+    /**
+     * Обернуть задачу так, чтобы она выполнялась с контекстом текущего потока
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        RequestContext context = current();
+        return () -> {
+            RequestContext previous = CURRENT.get();
+            CURRENT.set(context);
+            try {
+                return task.call();
+            } finally {
+                if (previous != null) CURRENT.set(previous);
+                else CURRENT.remove();
+            }
+        };
+    }
+}
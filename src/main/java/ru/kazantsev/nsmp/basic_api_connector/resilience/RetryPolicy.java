@@ -0,0 +1,292 @@
+package ru.kazantsev.nsmp.basic_api_connector.resilience;
+
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.core5.http.NoHttpResponseException;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.exception.BadResponseException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+
+import java.net.SocketException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Политика повтора запросов коннектора.
+ * Повторяются запросы, завершившиеся ошибкой передачи из retryableExceptions (по умолчанию обрыв/отказ соединения,
+ * таймаут соединения, отсутствие ответа) или ответом со статусом из retryableStatuses (по умолчанию 429, 502, 503, 504).
+ * По умолчанию повторяются только идемпотентные операции (см. {@link #DEFAULT_IDEMPOTENT_OPERATIONS}),
+ * повтор изменяющих операций включается через {@link Builder#retryNonIdempotent(boolean)}.
+ * Пауза между попытками растет экспоненциально со случайным разбросом, заголовок Retry-After ответа имеет приоритет.
+ * Количество повторов дополнительно ограничено бюджетом: каждый повтор тратит единицу бюджета,
+ * каждый успешный запрос пополняет его на budgetRatio, поэтому при массовых отказах повторы прекращаются.
+ * Повтор, пауза перед которым не укладывается в срок {@link RequestContext}, не выполняется и бюджет не тратит.
+ * Ошибки чтения уже полученного тела ответа (ResponseReadException) не повторяются: обработчик ответа
+ * мог успеть записать часть данных, например, при выгрузке метаинформации в поток.
+ * Подключается через {@link Connector#setRetryPolicy(RetryPolicy)}
+ */
+public class RetryPolicy {
+
+    /**
+     * Операции (PATH_SEGMENT), которые безопасно повторять
+     */
+    public static final Set<String> DEFAULT_IDEMPOTENT_OPERATIONS = Set.of(
+            "get", "find", "version", "groovy_version", "jpda_info", "metainfo", "scripts/status", "get-file"
+    );
+
+    public static final Set<Integer> DEFAULT_RETRYABLE_STATUSES = Set.of(429, 502, 503, 504);
+
+    public static final List<Class<? extends Throwable>> DEFAULT_RETRYABLE_EXCEPTIONS = List.of(
+            SocketException.class,
+            ConnectTimeoutException.class,
+            NoHttpResponseException.class
+    );
+
+    protected static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    protected final int maxAttempts;
+    protected final Duration initialDelay;
+    protected final Duration maxDelay;
+    protected final double multiplier;
+    protected final double jitter;
+    protected final Set<Integer> retryableStatuses;
+    protected final List<Class<? extends Throwable>> retryableExceptions;
+    protected final Set<String> idempotentOperations;
+    protected final boolean retryNonIdempotent;
+    protected final double budgetRatio;
+    protected final double budgetMax;
+
+    protected double budget;
+
+    protected RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialDelay = builder.initialDelay;
+        this.maxDelay = builder.maxDelay;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.retryableStatuses = Set.copyOf(builder.retryableStatuses);
+        this.retryableExceptions = List.copyOf(builder.retryableExceptions);
+        this.idempotentOperations = Set.copyOf(builder.idempotentOperations);
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+        this.budgetRatio = builder.budgetRatio;
+        this.budgetMax = builder.budgetMax;
+        this.budget = builder.budgetMax;
+    }
+
+    /**
+     * Получить конструктор политики с настройками по умолчанию:
+     * 3 попытки, пауза от 200 мс до 10 с с множителем 2 и разбросом 50%, бюджет 10 повторов с пополнением 0.1 за успешный запрос
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Определить, нужно ли повторить запрос в контексте текущего потока, и потратить бюджет на повтор
+     *
+     * @param operation  операция (PATH_SEGMENT)
+     * @param repeatable можно ли отправить тело запроса повторно
+     * @param attempt    номер завершившейся попытки, начиная с 1
+     * @param exception  ошибка попытки
+     * @return пауза перед повтором или null, если повторять не нужно
+     */
+    public Duration retryDelay(String operation, boolean repeatable, int attempt, RuntimeException exception) {
+        return retryDelay(operation, repeatable, attempt, exception, RequestContext.current());
+    }
+
+    /**
+     * Определить, нужно ли повторить запрос, и потратить бюджет на повтор.
+     * Бюджет тратится только если пауза укладывается в срок контекста
+     *
+     * @param operation  операция (PATH_SEGMENT)
+     * @param repeatable можно ли отправить тело запроса повторно
+     * @param attempt    номер завершившейся попытки, начиная с 1
+     * @param exception  ошибка попытки
+     * @param context    контекст запроса
+     * @return пауза перед повтором или null, если повторять не нужно
+     */
+    public Duration retryDelay(String operation, boolean repeatable, int attempt, RuntimeException exception, RequestContext context) {
+        if (attempt >= maxAttempts || !repeatable) return null;
+        if (!retryNonIdempotent && !idempotentOperations.contains(operation)) return null;
+        if (!isRetryable(exception)) return null;
+        Duration retryAfter = retryAfter(exception);
+        Duration delay = retryAfter != null ? retryAfter : backoff(attempt);
+        if (!context.hasTimeFor(delay)) return null;
+        synchronized (this) {
+            if (budget < 1) return null;
+            budget -= 1;
+        }
+        return delay;
+    }
+
+    /**
+     * Учесть успешный запрос: пополнить бюджет повторов
+     */
+    public synchronized void onSuccess() {
+        budget = Math.min(budgetMax, budget + budgetRatio);
+    }
+
+    /**
+     * Получить текущий бюджет повторов
+     */
+    @SuppressWarnings("unused")
+    public synchronized double getBudget() {
+        return budget;
+    }
+
+    /**
+     * Является ли ошибка поводом для повтора
+     */
+    public boolean isRetryable(RuntimeException exception) {
+        if (exception instanceof BadResponseException badResponse) {
+            return retryableStatuses.contains(badResponse.getResponseSnapshot().getStatus());
+        }
+        if (exception instanceof RequestProcessException) {
+            for (Throwable cause = exception.getCause(); cause != null; cause = cause.getCause()) {
+                for (Class<? extends Throwable> type : retryableExceptions) {
+                    if (type.isInstance(cause)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Пауза перед повтором: initialDelay * multiplier^(attempt - 1), не больше maxDelay, со случайным разбросом jitter
+     *
+     * @param attempt номер завершившейся попытки, начиная с 1
+     * @return пауза
+     */
+    public Duration backoff(int attempt) {
+        double delay = initialDelay.toMillis() * Math.pow(multiplier, attempt - 1);
+        delay = Math.min(delay, maxDelay.toMillis());
+        if (jitter > 0) delay = delay * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+        return Duration.ofMillis(Math.round(delay));
+    }
+
+    /**
+     * Получить паузу из заголовка Retry-After (секунды или HTTP-дата), не больше maxDelay
+     */
+    protected Duration retryAfter(RuntimeException exception) {
+        if (!(exception instanceof BadResponseException badResponse)) return null;
+        String value = badResponse.getResponseSnapshot().getHeader(RETRY_AFTER_HEADER);
+        if (value == null || value.isBlank()) return null;
+        Duration delay;
+        try {
+            delay = Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                Instant at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                delay = Duration.between(Instant.now(), at);
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+        if (delay.isNegative()) return Duration.ZERO;
+        return delay.compareTo(maxDelay) > 0 ? maxDelay : delay;
+    }
+
+    /**
+     * Конструктор политики повтора
+     */
+    @SuppressWarnings("unused")
+    public static class Builder {
+        protected int maxAttempts = 3;
+        protected Duration initialDelay = Duration.ofMillis(200);
+        protected Duration maxDelay = Duration.ofSeconds(10);
+        protected double multiplier = 2;
+        protected double jitter = 0.5;
+        protected Set<Integer> retryableStatuses = DEFAULT_RETRYABLE_STATUSES;
+        protected List<Class<? extends Throwable>> retryableExceptions = DEFAULT_RETRYABLE_EXCEPTIONS;
+        protected Set<String> idempotentOperations = DEFAULT_IDEMPOTENT_OPERATIONS;
+        protected boolean retryNonIdempotent;
+        protected double budgetRatio = 0.1;
+        protected double budgetMax = 10;
+
+        /**
+         * Максимальное количество попыток, включая первую
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be at least 1");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Пауза перед первым повтором и максимальная пауза
+         */
+        public Builder delay(Duration initialDelay, Duration maxDelay) {
+            this.initialDelay = initialDelay;
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Множитель паузы для каждого следующего повтора
+         */
+        public Builder multiplier(double multiplier) {
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Случайный разброс паузы, доля от 0 до 1: пауза уменьшается на случайную величину до jitter * паузы
+         */
+        public Builder jitter(double jitter) {
+            if (jitter < 0 || jitter > 1) throw new IllegalArgumentException("jitter must be between 0 and 1");
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Статусы ответа, при которых запрос повторяется
+         */
+        public Builder retryableStatuses(Set<Integer> retryableStatuses) {
+            this.retryableStatuses = retryableStatuses;
+            return this;
+        }
+
+        /**
+         * Ошибки передачи (причины RequestProcessException), при которых запрос повторяется
+         */
+        public Builder retryableExceptions(List<Class<? extends Throwable>> retryableExceptions) {
+            this.retryableExceptions = retryableExceptions;
+            return this;
+        }
+
+        /**
+         * Операции (PATH_SEGMENT), которые повторяются без включения retryNonIdempotent
+         */
+        public Builder idempotentOperations(Set<String> idempotentOperations) {
+            this.idempotentOperations = idempotentOperations;
+            return this;
+        }
+
+        /**
+         * Повторять также изменяющие операции (create, edit, exec и т.д.).
+         * Если сервер успел выполнить запрос до ошибки, изменение будет применено повторно
+         */
+        public Builder retryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        /**
+         * Бюджет повторов: максимальный запас и пополнение за каждый успешный запрос
+         */
+        public Builder budget(double budgetMax, double budgetRatio) {
+            this.budgetMax = budgetMax;
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package ru.kazantsev.nsmp.basic_api_connector.scripts;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.dto.ScriptsManifestDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Локальное зеркало скриптов инсталляции.
+ * Архив из {@link Connector#getScripts(ru.kazantsev.nsmp.basic_api_connector.StreamProcessor, Long)} читается потоком,
+ * файлы извлекаются по одному, а на диск перезаписываются только те, чье содержимое изменилось.
+ * Состояние зеркала хранится в манифесте в корне директории, по нему следующая синхронизация
+ * пропускает неизмененные файлы
+ */
+public class ScriptsMirror {
+
+    /**
+     * Имя файла манифеста в корне зеркала
+     */
+    public static final String MANIFEST_FILE_NAME = ".scripts_manifest.json";
+
+    /**
+     * Размер файла из архива, до которого его содержимое держится в памяти, а не во временном файле
+     */
+    protected static final int MAX_IN_MEMORY_ENTRY_SIZE = 4 * 1024 * 1024;
+
+    protected static final Logger logger = LoggerFactory.getLogger(ScriptsMirror.class);
+
+    protected final Path directory;
+
+    protected final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Создать зеркало в указанной директории
+     *
+     * @param directory директория зеркала, будет создана при первой синхронизации
+     */
+    public ScriptsMirror(Path directory) {
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Получить директорию зеркала
+     *
+     * @return директория зеркала
+     */
+    @SuppressWarnings("unused")
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Синхронизировать зеркало со скриптами инсталляции
+     *
+     * @param connector коннектор к инсталляции
+     * @return результат синхронизации
+     */
+    @SuppressWarnings("unused")
+    public ScriptsSyncResult sync(Connector connector) {
+        return sync(connector, null);
+    }
+
+    /**
+     * Синхронизировать зеркало со скриптами инсталляции
+     *
+     * @param connector   коннектор к инсталляции
+     * @param readTimeout время ожидания ответа от сервера
+     * @return результат синхронизации
+     */
+    public ScriptsSyncResult sync(Connector connector, Long readTimeout) {
+        return connector.getScripts(this::sync, readTimeout);
+    }
+
+    /**
+     * Синхронизировать зеркало с архивом скриптов. Поток будет закрыт после чтения
+     *
+     * @param archive поток zip архива в формате, который отдает smpsync
+     * @return результат синхронизации
+     * @throws IOException если не удалось прочитать архив или записать файлы
+     */
+    public ScriptsSyncResult sync(InputStream archive) throws IOException {
+        Files.createDirectories(directory);
+        ScriptsManifestDto previous = readManifest();
+        ScriptsManifestDto actual = new ScriptsManifestDto();
+        ScriptsSyncResult result = new ScriptsSyncResult();
+        try (ZipInputStream zip = new ZipInputStream(archive)) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zip.getNextEntry()) != null) {
+                if (zipEntry.isDirectory()) continue;
+                String name = normalizeEntryName(zipEntry.getName());
+                if (name.isEmpty() || name.equals(MANIFEST_FILE_NAME)) continue;
+                Path target = resolve(name);
+                ScriptsManifestDto.Entry known = previous.entries.get(name);
+                boolean intact = known != null && isIntact(target, known);
+                if (intact && zipEntry.getCrc() != -1 && zipEntry.getSize() != -1
+                        && Objects.equals(known.crc, zipEntry.getCrc())
+                        && Objects.equals(known.size, zipEntry.getSize())) {
+                    //crc и размер есть в заголовке, содержимое можно даже не распаковывать
+                    actual.entries.put(name, known);
+                    result.unchanged.add(name);
+                    continue;
+                }
+                try (EntryContent content = readEntry(zip)) {
+                    if (intact && content.sha256.equals(known.sha256)) {
+                        actual.entries.put(name, known);
+                        result.unchanged.add(name);
+                        continue;
+                    }
+                    content.moveTo(target);
+                    actual.entries.put(name, new ScriptsManifestDto.Entry(
+                            content.sha256,
+                            content.crc,
+                            content.size,
+                            Files.getLastModifiedTime(target).toMillis()
+                    ));
+                    if (known == null) result.added.add(name);
+                    else result.updated.add(name);
+                }
+            }
+        }
+        for (String name : previous.entries.keySet()) {
+            if (actual.entries.containsKey(name)) continue;
+            Files.deleteIfExists(resolve(name));
+            result.removed.add(name);
+        }
+        writeManifest(actual);
+        logger.debug("Scripts mirror \"{}\" synchronized, {}", directory, result);
+        return result;
+    }
+
+    /**
+     * Проверить, что локальный файл не трогали с момента последней синхронизации
+     *
+     * @param target локальный файл
+     * @param known  запись манифеста
+     * @return true, если размер и время изменения совпадают с манифестом
+     */
+    protected boolean isIntact(Path target, ScriptsManifestDto.Entry known) throws IOException {
+        return Files.isRegularFile(target)
+                && known.size != null
+                && known.lastModified != null
+                && Files.size(target) == known.size
+                && Files.getLastModifiedTime(target).toMillis() == known.lastModified;
+    }
+
+    /**
+     * Привести имя записи архива к относительному пути с прямыми слешами
+     *
+     * @param entryName имя записи архива
+     * @return нормализованное имя
+     */
+    protected static String normalizeEntryName(String entryName) {
+        String name = entryName.replace('\\', '/');
+        while (name.startsWith("/")) name = name.substring(1);
+        return name;
+    }
+
+    /**
+     * Получить путь локального файла для записи архива
+     *
+     * @param name нормализованное имя записи
+     * @return путь внутри директории зеркала
+     * @throws IOException если запись указывает за пределы директории зеркала
+     */
+    protected Path resolve(String name) throws IOException {
+        Path target = directory.resolve(name).normalize();
+        if (!target.startsWith(directory) || target.equals(directory)) {
+            throw new IOException("Archive entry " + name + " points outside of the mirror directory " + directory);
+        }
+        return target;
+    }
+
+    protected ScriptsManifestDto readManifest() {
+        Path file = directory.resolve(MANIFEST_FILE_NAME);
+        if (!Files.isRegularFile(file)) return new ScriptsManifestDto();
+        try {
+            return objectMapper.readValue(file.toFile(), ScriptsManifestDto.class);
+        } catch (IOException e) {
+            logger.warn("Couldn't read scripts manifest at {}, full resync will be performed. Error text: {}", file, e.getMessage());
+            return new ScriptsManifestDto();
+        }
+    }
+
+    protected void writeManifest(ScriptsManifestDto manifest) throws IOException {
+        Path file = directory.resolve(MANIFEST_FILE_NAME);
+        Path temp = Files.createTempFile(directory, MANIFEST_FILE_NAME, ".tmp");
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), manifest);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Прочитать текущую запись архива, посчитав ее хеш и crc.
+     * Небольшие файлы остаются в памяти, большие сбрасываются во временный файл в директории зеркала
+     *
+     * @param zip поток архива, спозиционированный на записи
+     * @return прочитанное содержимое
+     */
+    protected EntryContent readEntry(ZipInputStream zip) throws IOException {
+        MessageDigest digest = newSha256();
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        OutputStream outputStream = memory;
+        Path spill = null;
+        long size = 0;
+        byte[] buffer = new byte[8192];
+        int read;
+        try {
+            while ((read = zip.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                crc.update(buffer, 0, read);
+                if (spill == null && size + read > MAX_IN_MEMORY_ENTRY_SIZE) {
+                    spill = Files.createTempFile(directory, ".entry", ".tmp");
+                    outputStream = Files.newOutputStream(spill);
+                    memory.writeTo(outputStream);
+                    memory = null;
+                }
+                outputStream.write(buffer, 0, read);
+                size += read;
+            }
+            if (spill != null) outputStream.close();
+        } catch (IOException | RuntimeException e) {
+            if (spill != null) {
+                outputStream.close();
+                Files.deleteIfExists(spill);
+            }
+            throw e;
+        }
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        if (spill != null) return new EntryContent(null, spill, sha256, crc.getValue(), size);
+        return new EntryContent(memory.toByteArray(), null, sha256, crc.getValue(), size);
+    }
+
+    protected static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Содержимое одной записи архива
+     */
+    protected class EntryContent implements Closeable {
+        final byte[] bytes;
+        final Path spill;
+        final String sha256;
+        final long crc;
+        final long size;
+
+        EntryContent(byte[] bytes, Path spill, String sha256, long crc, long size) {
+            this.bytes = bytes;
+            this.spill = spill;
+            this.sha256 = sha256;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        /**
+         * Положить содержимое на место целевого файла
+         *
+         * @param target целевой файл
+         */
+        void moveTo(Path target) throws IOException {
+            Files.createDirectories(target.getParent());
+            Path source = spill;
+            if (source == null) {
+                source = Files.createTempFile(directory, ".entry", ".tmp");
+                try {
+                    Files.write(source, bytes);
+                } catch (IOException e) {
+                    Files.deleteIfExists(source);
+                    throw e;
+                }
+            }
+            try {
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(source);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spill != null) Files.deleteIfExists(spill);
+        }
+    }
+}
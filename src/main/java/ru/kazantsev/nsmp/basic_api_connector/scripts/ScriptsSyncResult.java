@@ -0,0 +1,35 @@
+package ru.kazantsev.nsmp.basic_api_connector.scripts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Результат синхронизации локального зеркала скриптов.
+ * Все пути указаны относительно корня архива
+ */
+@SuppressWarnings("unused")
+public class ScriptsSyncResult {
+    /** Файлы, которых раньше не было в зеркале */
+    public final List<String> added = new ArrayList<>();
+    /** Файлы, содержимое которых изменилось и было перезаписано */
+    public final List<String> updated = new ArrayList<>();
+    /** Файлы, которые пропали из архива и были удалены из зеркала */
+    public final List<String> removed = new ArrayList<>();
+    /** Файлы, которые не изменились и не перезаписывались */
+    public final List<String> unchanged = new ArrayList<>();
+
+    /**
+     * Признак того, что синхронизация что-то поменяла в зеркале
+     *
+     * @return true, если были добавлены, изменены или удалены файлы
+     */
+    public boolean hasChanges() {
+        return !added.isEmpty() || !updated.isEmpty() || !removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "added: " + added.size() + ", updated: " + updated.size() +
+                ", removed: " + removed.size() + ", unchanged: " + unchanged.size();
+    }
+}
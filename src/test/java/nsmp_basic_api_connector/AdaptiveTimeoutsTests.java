@@ -0,0 +1,91 @@
+package nsmp_basic_api_connector;
+
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.ConnectorParams;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.AdaptiveTimeouts;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.RequestContext;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveTimeoutsTests {
+
+    /**
+     * Коннектор, запросы которого завершаются заданной ошибкой без обращения к NSMP
+     */
+    static class TimingOutConnector extends Connector {
+        IOException error;
+
+        TimingOutConnector() throws Exception {
+            super(new ConnectorParams("TEST", "https", "localhost", "key", false));
+        }
+
+        @Override
+        protected <T> T send(HttpUriRequestBase request, HttpClientResponseHandler<T> handler) throws IOException {
+            throw error;
+        }
+    }
+
+    private static AdaptiveTimeouts recordingEverySample() {
+        return AdaptiveTimeouts.builder()
+                .percentile(0.5, 1, 100)
+                .bounds(Duration.ofMillis(1), Duration.ofMinutes(5))
+                .build();
+    }
+
+    @Test
+    void maxTimeoutUntilEnoughSamples() {
+        AdaptiveTimeouts timeouts = AdaptiveTimeouts.builder()
+                .percentile(0.9, 10, 100)
+                .bounds(Duration.ofMillis(100), Duration.ofSeconds(60))
+                .build();
+        for (int i = 0; i < 9; i++) timeouts.record("get", Duration.ofMillis(200));
+        assertEquals(Duration.ofSeconds(60), timeouts.timeout("get"));
+        timeouts.record("get", Duration.ofMillis(200));
+        assertEquals(Duration.ofMillis(600), timeouts.timeout("get"));
+        assertEquals(Duration.ofSeconds(60), timeouts.timeout("exec"));
+    }
+
+    @Test
+    void timeoutIsMultipleOfPercentileWithinBounds() {
+        AdaptiveTimeouts timeouts = AdaptiveTimeouts.builder()
+                .percentile(0.9, 10, 100)
+                .multiplier(2)
+                .bounds(Duration.ofSeconds(1), Duration.ofSeconds(10))
+                .build();
+        for (int i = 1; i <= 10; i++) timeouts.record("find", Duration.ofMillis(i * 10));
+        assertEquals(Duration.ofSeconds(1), timeouts.timeout("find"));
+        for (int i = 1; i <= 10; i++) timeouts.record("exec", Duration.ofSeconds(i));
+        assertEquals(Duration.ofSeconds(10), timeouts.timeout("exec"));
+        for (int i = 1; i <= 10; i++) timeouts.record("metainfo", Duration.ofMillis(i * 300));
+        assertEquals(Duration.ofMillis(5400), timeouts.timeout("metainfo"));
+    }
+
+    @Test
+    void onlyAdaptiveResponseTimeoutsAreRecordedByConnector() throws Exception {
+        TimingOutConnector connector = new TimingOutConnector();
+        AdaptiveTimeouts timeouts = recordingEverySample();
+        connector.setAdaptiveTimeouts(timeouts);
+
+        connector.error = new ConnectTimeoutException("connect timed out");
+        assertThrows(RequestProcessException.class, () -> connector.version());
+        assertNull(timeouts.getLatencyTracker().percentile("version", 0.5, 1));
+
+        connector.error = new SocketTimeoutException("read timed out");
+        assertThrows(DeadlineExceededException.class, () -> RequestContext.current().withTimeout(Duration.ofSeconds(10))
+                .run(() -> connector.version()));
+        assertNull(timeouts.getLatencyTracker().percentile("version", 0.5, 1));
+
+        assertThrows(RequestProcessException.class, () -> connector.version());
+        assertNotNull(timeouts.getLatencyTracker().percentile("version", 0.5, 1));
+    }
+}
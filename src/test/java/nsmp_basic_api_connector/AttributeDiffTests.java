@@ -0,0 +1,39 @@
+package nsmp_basic_api_connector;
+
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.AttributeDiff;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttributeDiffTests {
+
+    @Test
+    void unchangedValuesAreSkipped() {
+        Map<String, Object> previous = new HashMap<>();
+        previous.put("title", "test");
+        previous.put("agreement", Map.of("UUID", "agreement$9101", "title", "SLA"));
+        previous.put("priority", 2);
+        previous.put("cost", 10.50);
+        previous.put("files", List.of(Map.of("UUID", "file$1"), Map.of("UUID", "file$2")));
+        previous.put("deadline", null);
+        Map<String, Object> updated = new HashMap<>();
+        updated.put("title", "test");
+        updated.put("agreement", "agreement$9101");
+        updated.put("priority", 2L);
+        updated.put("cost", 10.5);
+        updated.put("files", List.of("file$2", "file$1"));
+        updated.put("deadline", null);
+        assertTrue(AttributeDiff.changed(previous, updated).isEmpty());
+    }
+
+    @Test
+    void changedAndUnknownValuesAreSent() {
+        Map<String, Object> previous = Map.of("title", "test", "agreement", Map.of("UUID", "agreement$9101"));
+        Map<String, Object> updated = Map.of("title", "new", "agreement", "agreement$9101", "state", "resolved");
+        assertEquals(Map.of("title", "new", "state", "resolved"), AttributeDiff.changed(previous, updated));
+    }
+}
@@ -0,0 +1,313 @@
+package nsmp_basic_api_connector;
+
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.ConnectorParams;
+import ru.kazantsev.nsmp.basic_api_connector.batch.BulkOperationResult;
+import ru.kazantsev.nsmp.basic_api_connector.batch.CreateM2MBatcher;
+import ru.kazantsev.nsmp.basic_api_connector.batch.CreateM2MMultipleResult;
+import ru.kazantsev.nsmp.basic_api_connector.batch.GetManyResult;
+import ru.kazantsev.nsmp.basic_api_connector.batch.ReferencePrefetcher;
+import ru.kazantsev.nsmp.basic_api_connector.batch.WriteBehindEditor;
+import ru.kazantsev.nsmp.basic_api_connector.exception.BatchItemException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static nsmp_basic_api_connector.TestConstants.SERVICE_CALL_METACLASS;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Пакетные операции поверх коннектора, отвечающего без обращения к NSMP
+ */
+class BatchTests {
+
+    /**
+     * Коннектор, создающий объекты в памяти. Объекты с атрибутом fail не создаются
+     */
+    static class FakeConnector extends Connector {
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        int created;
+        int transportFailures;
+        IOException transportError = new ConnectException("Connection refused");
+        final List<String> scripts = new CopyOnWriteArrayList<>();
+        String execOutput;
+        final List<Map<String, Object>> edits = new CopyOnWriteArrayList<>();
+        final List<String> gets = new CopyOnWriteArrayList<>();
+        CountDownLatch batchReleased;
+        Error batchError;
+
+        FakeConnector() throws Exception {
+            super(new ConnectorParams("TEST", "https", "localhost", "key", false));
+        }
+
+        @Override
+        public HashMap<String, Object> get(String objectUuid, List<String> returnAttrs) {
+            gets.add(objectUuid);
+            if (objectUuid.startsWith("missing")) throw new IllegalStateException("not found");
+            HashMap<String, Object> object = new HashMap<>();
+            object.put("UUID", objectUuid);
+            object.put("title", "title of " + objectUuid);
+            if (objectUuid.startsWith("agreement")) object.put("service", Map.of("UUID", "slmService$1"));
+            return object;
+        }
+
+        @Override
+        public void edit(String objectUuid, Map<String, Object> attributes) {
+            Map<String, Object> edit = new HashMap<>(attributes);
+            edit.put("UUID", objectUuid);
+            edits.add(edit);
+        }
+
+        @Override
+        public HashMap<String, Object> editM2M(String objectUuid, Map<String, Object> attributes) {
+            edit(objectUuid, attributes);
+            HashMap<String, Object> object = new HashMap<>(attributes);
+            object.put("UUID", objectUuid);
+            object.put("m2m", true);
+            return object;
+        }
+
+        @Override
+        public String exec(String scriptText, Long readTimeout) {
+            scripts.add(scriptText);
+            return execOutput;
+        }
+
+        @Override
+        public synchronized List<HashMap<String, Object>> createM2MMultiple(List<Map<String, Object>> objects) {
+            if (batchReleased != null) {
+                try {
+                    batchReleased.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (batchError != null) throw batchError;
+            if (transportFailures > 0) {
+                transportFailures--;
+                throw new RequestProcessException(transportError);
+            }
+            batchSizes.add(objects.size());
+            List<HashMap<String, Object>> result = new ArrayList<>();
+            for (Map<String, Object> object : objects) {
+                HashMap<String, Object> item = new HashMap<>();
+                if (object.containsKey("fail")) {
+                    item.putAll(object);
+                    item.put("error", "validation failed");
+                } else {
+                    item.put("UUID", object.get("metaClass") + "$" + (++created));
+                }
+                result.add(item);
+            }
+            return result;
+        }
+    }
+
+    @Test
+    void batcherFlushesBySizeAndMapsResults() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        try (CreateM2MBatcher batcher = new CreateM2MBatcher(connector, 3, Duration.ofMinutes(1))) {
+            CompletableFuture<HashMap<String, Object>> first = batcher.createM2M(SERVICE_CALL_METACLASS, Map.of("title", "1"));
+            CompletableFuture<HashMap<String, Object>> failed = batcher.createM2M(SERVICE_CALL_METACLASS, Map.of("fail", true));
+            CompletableFuture<HashMap<String, Object>> third = batcher.createM2M(SERVICE_CALL_METACLASS, Map.of("title", "3"));
+            assertEquals(SERVICE_CALL_METACLASS + "$1", first.get(5, TimeUnit.SECONDS).get("UUID"));
+            assertEquals(SERVICE_CALL_METACLASS + "$2", third.get(5, TimeUnit.SECONDS).get("UUID"));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof BatchItemException);
+        }
+        assertEquals(List.of(3), connector.batchSizes);
+    }
+
+    @Test
+    void batcherFlushesByTime() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        try (CreateM2MBatcher batcher = new CreateM2MBatcher(connector, 100, Duration.ofMillis(20))) {
+            CompletableFuture<HashMap<String, Object>> future = batcher.createM2M(SERVICE_CALL_METACLASS, Map.of());
+            assertNotNull(future.get(5, TimeUnit.SECONDS).get("UUID"));
+        }
+        assertEquals(List.of(1), connector.batchSizes);
+    }
+
+    @Test
+    void batcherDoesNotSendInProducerThread() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        connector.batchReleased = new CountDownLatch(1);
+        try (CreateM2MBatcher batcher = new CreateM2MBatcher(connector, 2, Duration.ofMinutes(1))) {
+            batcher.createM2M(SERVICE_CALL_METACLASS, Map.of());
+            CompletableFuture<HashMap<String, Object>> last = batcher.createM2M(SERVICE_CALL_METACLASS, Map.of());
+            assertFalse(last.isDone());
+            connector.batchReleased.countDown();
+            assertNotNull(last.get(5, TimeUnit.SECONDS).get("UUID"));
+        }
+    }
+
+    @Test
+    void batcherCompletesFuturesOnError() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        connector.batchError = new NoClassDefFoundError("test");
+        try (CreateM2MBatcher batcher = new CreateM2MBatcher(connector, 1, Duration.ofMinutes(1))) {
+            CompletableFuture<HashMap<String, Object>> future = batcher.createM2M(SERVICE_CALL_METACLASS, Map.of());
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertSame(connector.batchError, e.getCause());
+        }
+    }
+
+    @Test
+    void chunkedCreateKeepsInputOrderAndRetriesTransportFailures() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        connector.transportFailures = 1;
+        List<Map<String, Object>> objects = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Map<String, Object> object = new HashMap<>();
+            object.put("metaClass", SERVICE_CALL_METACLASS);
+            if (i == 4) object.put("fail", true);
+            objects.add(object);
+        }
+        CreateM2MMultipleResult result = connector.createM2MMultiple(objects, 3, 2, 1);
+        assertEquals(7, result.items.size());
+        assertEquals(6, result.created.size());
+        assertEquals("validation failed", result.errors.get(4));
+        assertTrue(result.failures.isEmpty());
+        assertEquals(List.of(3, 3, 1), connector.batchSizes.stream().sorted(Comparator.reverseOrder()).toList());
+    }
+
+    @Test
+    void chunkedCreateReportsChunksThatFailedAfterRetries() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        connector.transportFailures = 1;
+        List<Map<String, Object>> objects = List.of(Map.of("metaClass", SERVICE_CALL_METACLASS));
+        CreateM2MMultipleResult result = connector.createM2MMultiple(objects, 10, 1, 0);
+        assertTrue(result.failures.get(0) instanceof RequestProcessException);
+        assertNull(result.items.get(0));
+        assertFalse(result.isComplete());
+    }
+
+    @Test
+    void chunkedCreateDoesNotRetryChunksThatMayHaveBeenProcessed() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        connector.transportFailures = 1;
+        connector.transportError = new SocketTimeoutException("Read timed out");
+        List<Map<String, Object>> objects = List.of(Map.of("metaClass", SERVICE_CALL_METACLASS));
+        CreateM2MMultipleResult result = connector.createM2MMultiple(objects, 10, 1, 3);
+        assertTrue(result.failures.get(0) instanceof RequestProcessException);
+        assertTrue(connector.batchSizes.isEmpty());
+    }
+
+    @Test
+    void editManyMergesScriptResults() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        connector.execOutput = "[{\"uuid\":\"a$1\"},{\"uuid\":\"a$2\",\"error\":\"Access denied\"}]\n";
+        Map<String, Map<String, Object>> changes = new LinkedHashMap<>();
+        changes.put("a$1", Map.of("title", "1"));
+        changes.put("a$2", Map.of("title", "2"));
+        BulkOperationResult result = connector.editMany(changes, 2, null);
+        assertEquals(List.of("a$1"), result.succeeded);
+        assertEquals("Access denied", result.errors.get("a$2"));
+        assertTrue(connector.scripts.get(0).contains("utils.edit"));
+        assertFalse(connector.scripts.get(0).contains("title"));
+    }
+
+    @Test
+    void deleteManyReportsChunkWithUnexpectedOutput() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        connector.execOutput = "[{\"uuid\":\"a$1\"}]";
+        BulkOperationResult result = connector.deleteMany(List.of("a$1", "a$2", "a$3"), 2, null);
+        assertEquals(2, connector.scripts.size());
+        assertTrue(result.failures.containsKey("a$1"));
+        assertTrue(result.failures.containsKey("a$2"));
+        assertTrue(result.failures.containsKey("a$3"));
+        assertTrue(result.succeeded.isEmpty());
+    }
+
+    @Test
+    void writeBehindMergesEditsOfOneObject() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        try (WriteBehindEditor editor = new WriteBehindEditor(connector, Duration.ofMinutes(1), 1)) {
+            editor.edit("a$1", Map.of("title", "1", "state", "registered"));
+            editor.edit("a$2", Map.of("title", "other"));
+            CompletableFuture<Void> last = editor.edit("a$1", Map.of("title", "2"));
+            editor.flush();
+            assertTrue(last.isDone());
+            assertEquals(3, editor.getEdits());
+            assertEquals(2, editor.getRequests());
+        }
+        Map<String, Object> merged = connector.edits.stream().filter(edit -> edit.get("UUID").equals("a$1")).findFirst().orElseThrow();
+        assertEquals(Map.of("UUID", "a$1", "title", "2", "state", "registered"), merged);
+    }
+
+    @Test
+    void writeBehindReturnsEditM2MResponseToEveryMergedCaller() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        try (WriteBehindEditor editor = new WriteBehindEditor(connector, Duration.ofMinutes(1), 1)) {
+            CompletableFuture<HashMap<String, Object>> first = editor.editM2M("a$1", Map.of("title", "1"));
+            CompletableFuture<Void> plain = editor.edit("a$1", Map.of("state", "registered"));
+            CompletableFuture<HashMap<String, Object>> second = editor.editM2M("a$1", Map.of("title", "2"));
+            editor.flush();
+            assertEquals(1, editor.getRequests());
+            assertTrue(plain.isDone());
+            assertEquals(Map.of("UUID", "a$1", "title", "2", "state", "registered", "m2m", true), first.join());
+            assertEquals(first.join(), second.join());
+        }
+        assertEquals(1, connector.edits.size());
+    }
+
+    @Test
+    void getManySeparatesFoundMissingAndFailed() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        connector.execOutput = "[{\"uuid\":\"a$1\",\"object\":{\"UUID\":\"a$1\",\"title\":\"T\"}},"
+                + "{\"uuid\":\"a$2\",\"missing\":true},{\"uuid\":\"a$3\",\"error\":\"Access denied\"}]";
+        GetManyResult result = connector.getMany(List.of("a$1", "a$2", "a$3", "a$1"), List.of("title"), 10, null);
+        assertEquals("T", result.objects.get("a$1").get("title"));
+        assertEquals(List.of("a$2"), result.missing);
+        assertEquals("Access denied", result.errors.get("a$3"));
+        assertTrue(connector.scripts.get(0).contains("utils.get"));
+    }
+
+    @Test
+    void prefetcherResolvesDistinctReferencesAlongPaths() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        List<HashMap<String, Object>> calls = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            HashMap<String, Object> call = new HashMap<>();
+            call.put("agreement", Map.of("UUID", "agreement$1", "title", "SLA"));
+            call.put("clientEmployee", i == 2 ? "missing$1" : "employee$" + i);
+            calls.add(call);
+        }
+        Map<String, RuntimeException> failures = new ReferencePrefetcher(connector, 2)
+                .prefetch(calls, List.of("agreement.service", "clientEmployee"), null);
+        assertEquals(5, connector.gets.size());
+        assertTrue(failures.containsKey("missing$1"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> agreement = (Map<String, Object>) calls.get(0).get("agreement");
+        assertSame(agreement, calls.get(1).get("agreement"));
+        assertEquals("title of slmService$1", ((Map<?, ?>) agreement.get("service")).get("title"));
+        assertEquals("title of employee$0", ((Map<?, ?>) calls.get(0).get("clientEmployee")).get("title"));
+        assertEquals("missing$1", calls.get(2).get("clientEmployee"));
+    }
+
+    @Test
+    void prefetcherIsSharedBetweenCalls() throws Exception {
+        FakeConnector connector = new FakeConnector();
+        ReferencePrefetcher prefetcher = connector.getReferencePrefetcher();
+        for (int i = 0; i < 3; i++) {
+            HashMap<String, Object> call = connector.getWithPrefetch("agreement$" + i, null, List.of("service"));
+            assertEquals("title of slmService$1", ((Map<?, ?>) call.get("service")).get("title"));
+        }
+        assertSame(prefetcher, connector.getReferencePrefetcher());
+    }
+}
@@ -0,0 +1,65 @@
+package nsmp_basic_api_connector;
+
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.ConnectorParams;
+import ru.kazantsev.nsmp.basic_api_connector.exception.BulkheadFullException;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.Bulkheads;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.ConcurrencyLimiter;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.OperationClass;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.PriorityScheduler;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadsTests {
+
+    @Test
+    void operationsAreClassified() {
+        Bulkheads bulkheads = Bulkheads.builder().assign("find", OperationClass.BULK).build();
+        assertEquals(OperationClass.INTERACTIVE, bulkheads.classify("get"));
+        assertEquals(OperationClass.BULK, bulkheads.classify("exec"));
+        assertEquals(OperationClass.BULK, bulkheads.classify("find"));
+        assertEquals(OperationClass.ADMIN, bulkheads.classify("metainfo"));
+        assertEquals(OperationClass.ADMIN, bulkheads.classify("scripts"));
+        assertEquals(OperationClass.INTERACTIVE, bulkheads.classify("version"));
+    }
+
+    @Test
+    void fullClassDoesNotBlockOthers() {
+        Bulkheads bulkheads = Bulkheads.builder()
+                .quota(OperationClass.ADMIN, 1)
+                .quota(OperationClass.INTERACTIVE, 2)
+                .maxWait(Duration.ZERO)
+                .build();
+        assertEquals(5, bulkheads.getTotalQuota());
+        OperationClass admin = bulkheads.acquire("metainfo");
+        assertThrows(BulkheadFullException.class, () -> bulkheads.acquire("scripts"));
+        //проверка версии кешем метаинформации не ждет выгрузки
+        bulkheads.release(bulkheads.acquire("version"));
+        assertEquals(1, bulkheads.getRejected(OperationClass.ADMIN));
+        OperationClass first = bulkheads.acquire("get");
+        OperationClass second = bulkheads.acquire("edit");
+        assertEquals(2, bulkheads.getInFlight(OperationClass.INTERACTIVE));
+        bulkheads.release(first);
+        bulkheads.release(second);
+        bulkheads.release(admin);
+        assertDoesNotThrow(() -> bulkheads.release(bulkheads.acquire("version")));
+    }
+
+    @Test
+    void sharedStagesMustLeaveRoomForInteractive() throws Exception {
+        Connector connector = new Connector(new ConnectorParams("TEST", "https", "localhost", "key", false));
+        Bulkheads bulkheads = Bulkheads.builder().build();
+        assertEquals(3, bulkheads.getBackgroundQuota());
+        connector.setConcurrencyLimiter(ConcurrencyLimiter.builder().limit(4, 3, 20).build());
+        assertThrows(IllegalArgumentException.class, () -> connector.setBulkheads(bulkheads));
+        connector.setConcurrencyLimiter(ConcurrencyLimiter.builder().limit(4, 4, 20).build());
+        connector.setBulkheads(bulkheads);
+        assertThrows(IllegalArgumentException.class, () -> connector.setConcurrencyLimiter(ConcurrencyLimiter.builder().build()));
+        assertThrows(IllegalArgumentException.class, () -> connector.setPriorityScheduler(new PriorityScheduler(3, Duration.ofSeconds(1))));
+        connector.setPriorityScheduler(new PriorityScheduler(4, Duration.ofSeconds(1)));
+        assertEquals(4, connector.getConcurrencyLimiter().getMinLimit());
+    }
+}
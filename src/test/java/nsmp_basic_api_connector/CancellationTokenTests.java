@@ -0,0 +1,48 @@
+package nsmp_basic_api_connector;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.CancellationToken;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.RequestContext;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CancellationTokenTests {
+
+    private static final URI URI = java.net.URI.create("https://localhost/sd/services/rest/exec");
+
+    @Test
+    void cancelAbortsRegisteredRequests() {
+        CancellationToken token = new CancellationToken();
+        HttpGet inFlight = new HttpGet(URI);
+        HttpGet finished = new HttpGet(URI);
+        token.register(inFlight);
+        token.register(finished);
+        token.unregister(finished);
+        token.cancel();
+        assertTrue(inFlight.isCancelled());
+        assertFalse(finished.isCancelled());
+    }
+
+    @Test
+    void requestRegisteredAfterCancelIsAbortedImmediately() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        HttpGet request = new HttpGet(URI);
+        token.register(request);
+        assertTrue(request.isCancelled());
+    }
+
+    @Test
+    void contextCheckFailsAfterCancel() {
+        CancellationToken token = new CancellationToken();
+        RequestContext context = RequestContext.current().withCancellation(token);
+        context.run(() -> RequestContext.current().check("exec"));
+        token.cancel();
+        assertThrows(RequestCancelledException.class, () -> context.run(() -> RequestContext.current().check("exec")));
+        assertNull(RequestContext.current().getCancellationToken());
+    }
+}
@@ -0,0 +1,133 @@
+package nsmp_basic_api_connector;
+
+import org.apache.hc.core5.http.NoHttpResponseException;
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.ConnectorParams;
+import ru.kazantsev.nsmp.basic_api_connector.exception.CircuitOpenException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.Bulkheads;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.CircuitBreaker;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.OperationClass;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTests {
+
+    private static final RequestProcessException NO_RESPONSE = new RequestProcessException(new NoHttpResponseException());
+
+    private static CircuitBreaker.Builder builder() {
+        return CircuitBreaker.builder()
+                .window(4, 4)
+                .failureRateThreshold(0.5)
+                .openDuration(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        CircuitBreaker breaker = builder().build();
+        breaker.onSuccess(breaker.acquire());
+        breaker.onError(breaker.acquire(), NO_RESPONSE);
+        breaker.onSuccess(breaker.acquire());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onError(breaker.acquire(), NO_RESPONSE);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitOpenException.class, breaker::acquire);
+    }
+
+    @Test
+    void clientErrorsDoNotOpen() {
+        CircuitBreaker breaker = builder().build();
+        for (int i = 0; i < 8; i++) breaker.onError(breaker.acquire(), new IllegalStateException());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void probeClosesOrReopens() {
+        long[] clock = {0};
+        CircuitBreaker breaker = new CircuitBreaker(builder()) {
+            @Override
+            protected long now() {
+                return clock[0];
+            }
+        };
+        for (int i = 0; i < 4; i++) breaker.onError(breaker.acquire(), NO_RESPONSE);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        clock[0] = 10_000;
+        long probe = breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertThrows(CircuitOpenException.class, breaker::acquire);
+        breaker.onError(probe, NO_RESPONSE);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        clock[0] = 20_000;
+        breaker.onSuccess(breaker.acquire());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void staleResultsAreIgnored() {
+        CircuitBreaker breaker = builder().build();
+        long stale = breaker.acquire();
+        for (int i = 0; i < 4; i++) breaker.onError(breaker.acquire(), NO_RESPONSE);
+        breaker.reset();
+        breaker.onError(stale, NO_RESPONSE);
+        breaker.onSuccess(breaker.acquire());
+        breaker.onError(breaker.acquire(), NO_RESPONSE);
+        breaker.onSuccess(breaker.acquire());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void cancelledAndExpiredCallsAreNotRecorded() {
+        CircuitBreaker breaker = builder().build();
+        for (int i = 0; i < 3; i++) breaker.onError(breaker.acquire(), NO_RESPONSE);
+        for (int i = 0; i < 4; i++) {
+            breaker.onError(breaker.acquire(), new RequestCancelledException());
+            breaker.onError(breaker.acquire(), new DeadlineExceededException("get"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onError(breaker.acquire(), NO_RESPONSE);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void cancelledProbeReleasesItsSlot() {
+        long[] clock = {0};
+        CircuitBreaker breaker = new CircuitBreaker(builder()) {
+            @Override
+            protected long now() {
+                return clock[0];
+            }
+        };
+        for (int i = 0; i < 4; i++) breaker.onError(breaker.acquire(), NO_RESPONSE);
+        clock[0] = 10_000;
+        breaker.onError(breaker.acquire(), new RequestCancelledException());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onError(breaker.acquire(), new DeadlineExceededException("get"));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        long probe = breaker.acquire();
+        assertThrows(CircuitOpenException.class, breaker::acquire);
+        breaker.onSuccess(probe);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void openBreakerFailsBeforeWaitingForQuota() throws Exception {
+        Connector connector = new Connector(new ConnectorParams("TEST", "https", "localhost", "key", false));
+        Bulkheads bulkheads = Bulkheads.builder().quota(OperationClass.INTERACTIVE, 1).maxWait(Duration.ofSeconds(30)).build();
+        connector.setBulkheads(bulkheads);
+        CircuitBreaker breaker = CircuitBreaker.builder().window(1, 1).build();
+        breaker.onError(breaker.acquire(), NO_RESPONSE);
+        connector.setCircuitBreaker(breaker);
+        bulkheads.acquire("version");
+        long started = System.nanoTime();
+        assertThrows(CircuitOpenException.class, connector::version);
+        assertTrue(System.nanoTime() - started < Duration.ofSeconds(5).toNanos());
+    }
+}
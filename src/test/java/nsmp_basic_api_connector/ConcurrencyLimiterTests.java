@@ -0,0 +1,70 @@
+package nsmp_basic_api_connector;
+
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.exception.ConcurrencyLimitExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.ConcurrencyLimiter;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTests {
+
+    private static final RequestProcessException READ_TIMEOUT = new RequestProcessException(new SocketTimeoutException());
+
+    @Test
+    void excessCallsAreRejectedAfterMaxWait() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                .limit(2, 1, 10)
+                .maxWait(Duration.ZERO)
+                .build();
+        limiter.acquire("get");
+        long started = limiter.acquire("get");
+        assertThrows(ConcurrencyLimitExceededException.class, () -> limiter.acquire("get"));
+        assertEquals(1, limiter.getRejected());
+        limiter.onSuccess("get", started);
+        assertDoesNotThrow(() -> limiter.acquire("get"));
+    }
+
+    @Test
+    void overloadDecreasesLimitOncePerEpisode() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                .limit(10, 1, 10)
+                .backoffRatio(0.5)
+                .build();
+        long first = limiter.acquire("get");
+        long second = limiter.acquire("get");
+        limiter.onError("find", first, READ_TIMEOUT);
+        limiter.onError("find", second, READ_TIMEOUT);
+        assertEquals(5, limiter.getLimit());
+        limiter.onError("find", limiter.acquire("get"), READ_TIMEOUT);
+        assertEquals(2, limiter.getLimit());
+        limiter.onError("find", limiter.acquire("get"), new IllegalStateException());
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void limitGrowsWhileUtilizedAndDropsOnLatencyGrowth() {
+        long[] clock = {0};
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.builder().limit(2, 1, 3)) {
+            @Override
+            protected long now() {
+                return clock[0];
+            }
+        };
+        for (int i = 0; i < 20; i++) {
+            long first = limiter.acquire("get");
+            long second = limiter.acquire("get");
+            clock[0] += 10_000_000;
+            limiter.onSuccess("get", first);
+            limiter.onSuccess("get", second);
+        }
+        assertEquals(3, limiter.getLimit());
+        long slow = limiter.acquire("get");
+        clock[0] += 100_000_000;
+        limiter.onSuccess("get", slow);
+        assertEquals(2, limiter.getLimit());
+    }
+}
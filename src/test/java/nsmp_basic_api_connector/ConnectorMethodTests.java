@@ -5,15 +5,24 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.dto.MetainfoCacheEntryDto;
 import ru.kazantsev.nsmp.basic_api_connector.dto.nsmp.FileDto;
 import ru.kazantsev.nsmp.basic_api_connector.dto.nsmp.ScriptChecksums;
 import ru.kazantsev.nsmp.basic_api_connector.dto.nsmp.ServiceTimeExclusionDto;
+import ru.kazantsev.nsmp.basic_api_connector.metainfo.MetainfoCache;
+import ru.kazantsev.nsmp.basic_api_connector.metainfo.MetainfoIndex;
+import ru.kazantsev.nsmp.basic_api_connector.scripts.ScriptsMirror;
+import ru.kazantsev.nsmp.basic_api_connector.scripts.ScriptsSyncResult;
 
+import javax.xml.stream.XMLStreamConstants;
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -25,6 +34,7 @@ import java.util.Map;
 import static nsmp_basic_api_connector.TestUtils.*;
 import static nsmp_basic_api_connector.TestConstants.*;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -258,6 +268,21 @@ class ConnectorMethodTests {
         assertFalse(archive.isBlank());
     }
 
+    @Test
+    void getScriptsToFile(@TempDir Path directory) throws Exception {
+        Path target = directory.resolve("scripts.zip");
+        long size = api().getScripts(target, null);
+        assertTrue(size > 0);
+        assertEquals(size, Files.size(target));
+    }
+
+    @Test
+    void syncScriptsMirror(@TempDir Path directory) {
+        ScriptsSyncResult result = new ScriptsMirror(directory).sync(api(), null);
+        assertNotNull(result);
+        assertFalse(result.added.isEmpty());
+    }
+
     @Test
     void getScriptsStatus() {
         ScriptChecksums checksums = api().getScriptsStatus();
@@ -290,6 +315,45 @@ class ConnectorMethodTests {
         assertNotNull(value);
     }
 
+    @Test
+    void metainfoToFile(@TempDir Path directory) throws Exception {
+        Path target = directory.resolve("metainfo.xml");
+        long size = api().metainfo(target, 60_000L);
+        assertTrue(size > 0);
+        assertEquals(size, Files.size(target));
+    }
+
+    @Test
+    void metainfoXml() {
+        Integer elements = api().metainfoXml(reader -> {
+            int count = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) count++;
+            }
+            return count;
+        }, 60_000L);
+        assertTrue(elements > 0);
+    }
+
+    @Test
+    void buildMetainfoIndex() {
+        MetainfoIndex index = MetainfoIndex.build(api(), 60_000L);
+        assertNotNull(index.getMetaClass("serviceCall"));
+        assertFalse(index.getAttributes(SERVICE_CALL_METACLASS).isEmpty());
+    }
+
+    @Test
+    void metainfoCache(@TempDir Path directory) {
+        Connector api = api();
+        MetainfoCache cache = new MetainfoCache(directory);
+        api.setMetainfoCache(cache);
+        String first = api.metainfo(60_000L);
+        MetainfoCacheEntryDto entry = cache.getEntry(api.getInstallationId());
+        assertNotNull(entry);
+        assertEquals(first, api.metainfo(60_000L));
+        assertEquals(entry.sha256, cache.getEntry(api.getInstallationId()).sha256);
+    }
+
     @Test
     void pushScripts() {
         Connector api = api();
@@ -0,0 +1,67 @@
+package nsmp_basic_api_connector;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.HedgingPolicy;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.LatencyTracker;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgingPolicyTests {
+
+    private static final URI URI = java.net.URI.create("https://localhost/sd/services/rest/get/serviceCall$501");
+
+    private static String slowFirst(AtomicInteger calls, long firstMillis) {
+        if (calls.incrementAndGet() == 1) {
+            sleep(firstMillis);
+            return "primary";
+        }
+        return "hedge";
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void slowRequestIsHedgedAndFirstResponseWins() {
+        HedgingPolicy policy = HedgingPolicy.builder()
+                .delay(Duration.ofMillis(50), Duration.ofMillis(1))
+                .build();
+        AtomicInteger calls = new AtomicInteger();
+        String result = policy.execute("get", () -> new HttpGet(URI), request -> slowFirst(calls, 2000));
+        assertEquals("hedge", result);
+        assertEquals(1, policy.getHedged());
+        assertEquals(1, policy.getHedgeWins());
+    }
+
+    @Test
+    void hedgeIsNotSentWithoutBudget() {
+        HedgingPolicy policy = HedgingPolicy.builder()
+                .delay(Duration.ofMillis(20), Duration.ofMillis(1))
+                .budget(0, 0)
+                .build();
+        AtomicInteger calls = new AtomicInteger();
+        String result = policy.execute("get", () -> new HttpGet(URI), request -> slowFirst(calls, 200));
+        assertEquals("primary", result);
+        assertEquals(0, policy.getHedged());
+    }
+
+    @Test
+    void percentileIsTakenFromRecentSamples() {
+        LatencyTracker tracker = new LatencyTracker(100);
+        assertNull(tracker.percentile("get", 0.95, 1));
+        for (int i = 1; i <= 100; i++) tracker.record("get", Duration.ofMillis(i));
+        assertEquals(Duration.ofMillis(95), tracker.percentile("get", 0.95, 20));
+        for (int i = 0; i < 100; i++) tracker.record("get", Duration.ofMillis(10));
+        assertEquals(Duration.ofMillis(10), tracker.percentile("get", 0.95, 20));
+    }
+}
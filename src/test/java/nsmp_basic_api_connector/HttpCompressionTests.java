@@ -0,0 +1,148 @@
+package nsmp_basic_api_connector;
+
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.ConnectorParams;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.http.CompressionStats;
+import ru.kazantsev.nsmp.basic_api_connector.http.DecodingResponseEntity;
+import ru.kazantsev.nsmp.basic_api_connector.http.TransferStats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Распаковка ответов и сжатие тел запросов без обращения к NSMP
+ */
+class HttpCompressionTests {
+
+    private static final byte[] BODY = "{\"title\":\"".concat("a".repeat(2000)).concat("\"}").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Коннектор, который запоминает отправляемое тело и завершает запрос обрывом соединения
+     */
+    static class CapturingConnector extends Connector {
+        HttpUriRequestBase request;
+        String sentEncoding;
+        byte[] sent;
+
+        CapturingConnector() throws Exception {
+            super(new ConnectorParams("TEST", "https", "localhost", "key", false));
+        }
+
+        @Override
+        protected <T> T send(HttpUriRequestBase request, HttpClientResponseHandler<T> handler) throws IOException {
+            this.request = request;
+            HttpEntity entity = request.getEntity();
+            sentEncoding = entity.getContentEncoding();
+            ByteArrayOutputStream wire = new ByteArrayOutputStream();
+            entity.writeTo(wire);
+            sent = wire.toByteArray();
+            throw new IOException("Connection reset");
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            deflate.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(byte[] wire, String encoding, TransferStats stats) throws IOException {
+        DecodingResponseEntity entity = new DecodingResponseEntity(new ByteArrayEntity(wire, ContentType.APPLICATION_JSON), encoding, stats);
+        try (InputStream inputStream = entity.getContent()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    @Test
+    void encodingsAreNormalized() throws IOException {
+        assertNull(DecodingResponseEntity.normalizeEncoding(null));
+        assertNull(DecodingResponseEntity.normalizeEncoding(" Identity "));
+        assertEquals(DecodingResponseEntity.GZIP, DecodingResponseEntity.normalizeEncoding("x-gzip"));
+        assertEquals(DecodingResponseEntity.DEFLATE, DecodingResponseEntity.normalizeEncoding("DEFLATE"));
+        assertThrows(IOException.class, () -> DecodingResponseEntity.normalizeEncoding("br"));
+    }
+
+    @Test
+    void gzipResponseIsDecodedAndCounted() throws IOException {
+        TransferStats stats = new TransferStats("get");
+        byte[] wire = gzip(BODY);
+        assertArrayEquals(BODY, decode(wire, DecodingResponseEntity.GZIP, stats));
+        assertEquals(wire.length, stats.getResponseWireBytes());
+        assertEquals(BODY.length, stats.getResponseBytes());
+    }
+
+    @Test
+    void zlibAndRawDeflateAreBothDecoded() throws IOException {
+        assertArrayEquals(BODY, decode(deflate(BODY, false), DecodingResponseEntity.DEFLATE, new TransferStats("get")));
+        assertArrayEquals(BODY, decode(deflate(BODY, true), DecodingResponseEntity.DEFLATE, new TransferStats("get")));
+    }
+
+    @Test
+    void identityAndEmptyBodiesArePassedThrough() throws IOException {
+        TransferStats stats = new TransferStats("get");
+        assertArrayEquals(BODY, decode(BODY, null, stats));
+        assertEquals(BODY.length, stats.getResponseWireBytes());
+        assertEquals(BODY.length, stats.getResponseBytes());
+        //пустое тело с Content-Encoding, например у ответа 204
+        assertEquals(0, decode(new byte[0], DecodingResponseEntity.GZIP, new TransferStats("delete")).length);
+        assertEquals(0, decode(new byte[0], DecodingResponseEntity.DEFLATE, new TransferStats("delete")).length);
+    }
+
+    @Test
+    void bodiesBelowThresholdAreSentAsIs() throws Exception {
+        CapturingConnector connector = new CapturingConnector();
+        connector.setRequestCompressionThreshold((long) BODY.length + 1);
+        assertThrows(RequestProcessException.class, () -> connector.edit("serviceCall$1", Map.of("title", "a".repeat(2000))));
+        assertNull(connector.sentEncoding);
+        assertArrayEquals(BODY, connector.sent);
+        CompressionStats.OperationStats stats = connector.getCompressionStats().getOperations().get("edit");
+        assertEquals(0, stats.getCompressedRequests());
+        assertEquals(BODY.length, stats.getRequestWireBytes());
+    }
+
+    @Test
+    void bodiesFromThresholdAreCompressedAndRestoredForRetry() throws Exception {
+        CapturingConnector connector = new CapturingConnector();
+        connector.setRequestCompressionThreshold((long) BODY.length);
+        assertThrows(RequestProcessException.class, () -> connector.edit("serviceCall$1", Map.of("title", "a".repeat(2000))));
+        assertEquals("gzip", connector.sentEncoding);
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(connector.sent))) {
+            assertArrayEquals(BODY, inputStream.readAllBytes());
+        }
+        CompressionStats.OperationStats stats = connector.getCompressionStats().getOperations().get("edit");
+        assertEquals(1, stats.getCompressedRequests());
+        assertEquals(BODY.length, stats.getRequestBytes());
+        assertEquals(connector.sent.length, stats.getRequestWireBytes());
+        //повторная попытка отправит исходное тело и сожмет его заново
+        HttpEntity restored = connector.request.getEntity();
+        assertNull(restored.getContentEncoding());
+        assertEquals(BODY.length, restored.getContentLength());
+    }
+}
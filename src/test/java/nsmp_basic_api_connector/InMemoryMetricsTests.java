@@ -0,0 +1,61 @@
+package nsmp_basic_api_connector;
+
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.ConnectorParams;
+import ru.kazantsev.nsmp.basic_api_connector.http.TransferStats;
+import ru.kazantsev.nsmp.basic_api_connector.metrics.InMemoryMetrics;
+import ru.kazantsev.nsmp.basic_api_connector.metrics.LatencyHistogram;
+import ru.kazantsev.nsmp.basic_api_connector.metrics.RequestEvent;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryMetricsTests {
+
+    private static RequestEvent event(String operation, int status, long millis, long responseBytes) {
+        TransferStats stats = new TransferStats(operation);
+        stats.setStatus(status);
+        stats.addResponseWireBytes(responseBytes);
+        return new RequestEvent(stats, Duration.ofMillis(millis), status >= 200 && status < 300);
+    }
+
+    @Test
+    void countsRequestsErrorsAndBytesPerOperation() {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        metrics.onRequest(event("get", 200, 20, 100));
+        metrics.onRequest(event("get", 404, 10, 50));
+        metrics.onRequest(event("get", -1, 30000, 0));
+        metrics.onRequest(event("exec", 200, 700, 10));
+        InMemoryMetrics.OperationMetrics get = metrics.getOperations().get("get");
+        assertEquals(3, get.getRequests());
+        assertEquals(2, get.getErrors());
+        assertEquals(Map.of(-1, 1L, 404, 1L), get.getErrorsByStatus());
+        assertEquals(150, get.getResponseBytes());
+        assertEquals(1, metrics.getOperations().get("exec").getRequests());
+    }
+
+    @Test
+    void histogramPercentileIsBucketBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++) histogram.record(Duration.ofMillis(40));
+        histogram.record(Duration.ofMillis(800));
+        histogram.record(Duration.ofMillis(400_000));
+        assertEquals(100, histogram.getCount());
+        assertEquals(Duration.ofMillis(50), histogram.percentile(0.5));
+        assertEquals(Duration.ofMillis(1000), histogram.percentile(0.99));
+        assertEquals(Duration.ofMillis(400_000), histogram.percentile(1));
+        assertEquals(Duration.ofMillis(400_000), histogram.getMax());
+    }
+
+    @Test
+    void connectionPoolGaugesLiveAsLongAsConnector() throws Exception {
+        Connector connector = new Connector(new ConnectorParams("TEST", "https", "localhost", "key", false));
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        connector.setMetricsListener(metrics);
+        assertSame(connector.getConnectionPoolGauges(), metrics.getConnectionPool());
+        assertSame(connector.getConnectionPoolGauges(), connector.getConnectionPoolGauges());
+    }
+}
@@ -0,0 +1,155 @@
+package nsmp_basic_api_connector;
+
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.ConnectorParams;
+import ru.kazantsev.nsmp.basic_api_connector.StreamProcessor;
+import ru.kazantsev.nsmp.basic_api_connector.dto.MetainfoCacheEntryDto;
+import ru.kazantsev.nsmp.basic_api_connector.exception.CircuitOpenException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.metainfo.MetainfoCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Дисковый кеш метаинформации поверх коннектора, отвечающего без обращения к NSMP
+ */
+class MetainfoCacheTests {
+
+    static class FakeConnector extends Connector {
+        final AtomicInteger downloads = new AtomicInteger();
+        String metainfo = "<metainfo/>";
+        RuntimeException versionError;
+        CountDownLatch downloadStarted;
+        CountDownLatch downloadReleased;
+        IOException sendError = new SocketTimeoutException("Read timed out");
+
+        FakeConnector(String installationId, String host) throws Exception {
+            super(new ConnectorParams(installationId, "https", host, "key", false));
+        }
+
+        @Override
+        public String version() {
+            if (versionError != null) throw versionError;
+            return "4.17";
+        }
+
+        @Override
+        protected <T> T send(HttpUriRequestBase request, HttpClientResponseHandler<T> handler) throws IOException {
+            throw sendError;
+        }
+
+        @Override
+        public <T> T downloadMetainfo(StreamProcessor<T> processor, Long readTimeout) {
+            downloads.incrementAndGet();
+            try {
+                if (downloadStarted != null) {
+                    downloadStarted.countDown();
+                    downloadReleased.await();
+                }
+                return processor.process(new ByteArrayInputStream(metainfo.getBytes(StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static String read(MetainfoCache cache, Connector connector) {
+        return cache.read(connector, inputStream -> new String(inputStream.readAllBytes(), StandardCharsets.UTF_8), null);
+    }
+
+    @Test
+    void readSurvivesConcurrentInvalidate(@TempDir Path directory) throws Exception {
+        FakeConnector connector = new FakeConnector("TEST", "localhost");
+        //сброс между получением описания копии и открытием файла данных
+        MetainfoCache cache = new MetainfoCache(directory) {
+            @Override
+            protected boolean isStale(MetainfoCacheEntryDto entry, Connector connector) {
+                invalidate(connector);
+                return false;
+            }
+        };
+        assertEquals("<metainfo/>", read(cache, connector));
+        assertEquals("<metainfo/>", read(cache, connector));
+        assertEquals(2, connector.downloads.get());
+    }
+
+    @Test
+    void cachedCopyIsUsedWhenVersionCheckFails(@TempDir Path directory) throws Exception {
+        MetainfoCache cache = new MetainfoCache(directory);
+        FakeConnector connector = new FakeConnector("TEST", "localhost");
+        assertEquals("<metainfo/>", read(cache, connector));
+        connector.versionError = new CircuitOpenException(Duration.ofSeconds(30));
+        assertEquals("<metainfo/>", read(cache, connector));
+        connector.versionError = new DeadlineExceededException("version");
+        assertEquals("<metainfo/>", read(cache, connector));
+        connector.versionError = new RequestCancelledException();
+        assertThrows(RequestCancelledException.class, () -> read(cache, connector));
+        assertEquals(1, connector.downloads.get());
+    }
+
+    @Test
+    void connectorsWithoutIdAreKeyedByHost(@TempDir Path directory) throws Exception {
+        MetainfoCache cache = new MetainfoCache(directory);
+        FakeConnector first = new FakeConnector(null, "first.example.ru");
+        FakeConnector second = new FakeConnector(null, "second.example.ru");
+        second.metainfo = "<metainfo>second</metainfo>";
+        assertEquals("<metainfo/>", read(cache, first));
+        assertEquals("<metainfo>second</metainfo>", read(cache, second));
+        assertEquals("<metainfo/>", read(cache, first));
+        assertEquals(1, first.downloads.get());
+        assertEquals("https_second.example.ru", MetainfoCache.getCacheKey(second));
+    }
+
+    @Test
+    void downloadOfOneInstallationDoesNotBlockOthers(@TempDir Path directory) throws Exception {
+        MetainfoCache cache = new MetainfoCache(directory);
+        FakeConnector cached = new FakeConnector("CACHED", "localhost");
+        FakeConnector slow = new FakeConnector("SLOW", "localhost");
+        assertEquals("<metainfo/>", read(cache, cached));
+        slow.downloadStarted = new CountDownLatch(1);
+        slow.downloadReleased = new CountDownLatch(1);
+        CompletableFuture<String> slowRead = CompletableFuture.supplyAsync(() -> read(cache, slow));
+        assertTrue(slow.downloadStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> cachedRead = CompletableFuture.supplyAsync(() -> read(cache, cached));
+        CompletableFuture<MetainfoCacheEntryDto> cachedRefresh = CompletableFuture.supplyAsync(() -> cache.refresh(cached, null));
+        assertEquals("<metainfo/>", cachedRead.get(5, TimeUnit.SECONDS));
+        assertNotNull(cachedRefresh.get(5, TimeUnit.SECONDS));
+        assertFalse(slowRead.isDone());
+        slow.downloadReleased.countDown();
+        assertEquals("<metainfo/>", slowRead.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failedUploadInvalidatesCachedCopy(@TempDir Path directory) throws Exception {
+        MetainfoCache cache = new MetainfoCache(directory);
+        FakeConnector connector = new FakeConnector("TEST", "localhost");
+        connector.setMetainfoCache(cache);
+        assertEquals("<metainfo/>", read(cache, connector));
+        assertNotNull(cache.getEntry(connector));
+        //ответ не дошел, но сервер мог применить загрузку
+        assertThrows(RequestProcessException.class, () -> connector.uploadMetainfo(
+                new ByteArrayInputStream("<metainfo/>".getBytes(StandardCharsets.UTF_8)), null, false));
+        assertNull(cache.getEntry(connector));
+    }
+}
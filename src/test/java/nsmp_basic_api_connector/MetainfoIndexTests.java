@@ -0,0 +1,111 @@
+package nsmp_basic_api_connector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.kazantsev.nsmp.basic_api_connector.Connector;
+import ru.kazantsev.nsmp.basic_api_connector.ConnectorParams;
+import ru.kazantsev.nsmp.basic_api_connector.XmlStreamProcessor;
+import ru.kazantsev.nsmp.basic_api_connector.metainfo.AttributeInfo;
+import ru.kazantsev.nsmp.basic_api_connector.metainfo.MetaClassInfo;
+import ru.kazantsev.nsmp.basic_api_connector.metainfo.MetainfoIndex;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static nsmp_basic_api_connector.TestUtils.resourceFile;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetainfoIndexTests {
+
+    /**
+     * Коннектор, который отдает метаинформацию из тестового файла и считает загрузки
+     */
+    static class FakeConnector extends Connector {
+        String version = "1";
+        int downloads;
+
+        FakeConnector() throws Exception {
+            super(new ConnectorParams("TEST", "https", "localhost", "key", false));
+        }
+
+        @Override
+        public String version() {
+            return version;
+        }
+
+        @Override
+        public <T> T metainfoXml(XmlStreamProcessor<T> processor, Long readTimeout) {
+            downloads++;
+            try (InputStream inputStream = Files.newInputStream(resourceFile("test/metainfo.xml").toPath())) {
+                return processor.process(newXmlInputFactory().createXMLStreamReader(inputStream));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static MetainfoIndex index() throws Exception {
+        return MetainfoIndex.parse(resourceFile("test/metainfo.xml").toPath());
+    }
+
+    @Test
+    void hierarchy() throws Exception {
+        List<MetaClassInfo> hierarchy = index().getHierarchy("serviceCall$incident");
+        assertEquals(2, hierarchy.size());
+        assertEquals("serviceCall", hierarchy.get(1).getFqn());
+        assertEquals(1, index().getChildren("serviceCall").size());
+    }
+
+    @Test
+    void inheritedAttributes() throws Exception {
+        Map<String, AttributeInfo> attributes = index().getAttributes("serviceCall$incident");
+        assertEquals(3, attributes.size());
+        assertEquals("Тема инцидента", attributes.get("title").getTitle());
+        assertEquals("serviceCall", attributes.get("clientEmployee").getDeclaringMetaClass());
+        assertEquals("employee", attributes.get("clientEmployee").getLinkedMetaClass());
+        assertEquals("catalogItem", index().getAttributeType("serviceCall$incident", "impact"));
+    }
+
+    @Test
+    void onlySegmentsAreIndexed() throws Exception {
+        //mc и catalog внутри действия по событию - ссылки, а не определения
+        assertEquals(2, index().getMetaClasses().size());
+        assertEquals(2, index().getAttributes("serviceCall").size());
+        assertEquals(1, index().getCatalogs().size());
+    }
+
+    @Test
+    void catalogs() throws Exception {
+        assertNotNull(index().getCatalog("impact"));
+        assertEquals("Влияние", index().getCatalog("impact").getTitle());
+    }
+
+    @Test
+    void saveAndLoad(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("metainfo.idx");
+        index().save(file);
+        MetainfoIndex loaded = MetainfoIndex.load(file);
+        assertEquals(index().getAttributes("serviceCall$incident").keySet(), loaded.getAttributes("serviceCall$incident").keySet());
+        assertEquals("employee", loaded.getAttribute("serviceCall$incident", "clientEmployee").getLinkedMetaClass());
+        assertEquals("Инцидент", loaded.getMetaClass("serviceCall$incident").getTitle());
+        assertNotNull(loaded.getCatalog("impact"));
+    }
+
+    @Test
+    void rebuildWhenVersionChanges(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("metainfo.idx");
+        FakeConnector connector = new FakeConnector();
+        assertEquals("1", MetainfoIndex.loadOrBuild(file, connector, null).getVersion());
+        assertEquals("1", MetainfoIndex.loadOrBuild(file, connector, null).getVersion());
+        assertEquals(1, connector.downloads);
+        connector.version = "2";
+        MetainfoIndex rebuilt = MetainfoIndex.loadOrBuild(file, connector, null);
+        assertEquals("2", rebuilt.getVersion());
+        assertEquals(2, connector.downloads);
+        assertEquals("2", MetainfoIndex.load(file).getVersion());
+        assertNotNull(rebuilt.getMetaClass("serviceCall$incident"));
+    }
+}
@@ -0,0 +1,81 @@
+package nsmp_basic_api_connector;
+
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.cache.ObjectCache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectCacheTests {
+
+    private static final String UUID = "serviceCall$501";
+
+    private static byte[] body(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void keyIgnoresAttrsOrder() {
+        ObjectCache cache = new ObjectCache(10);
+        cache.put(UUID, List.of("title", "state"), body("{}"), cache.stamp());
+        assertNotNull(cache.get(UUID, List.of("state", "title")));
+        assertNull(cache.get(UUID, null));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        ObjectCache cache = new ObjectCache(2);
+        cache.put("a$1", null, body("{}"), cache.stamp());
+        cache.put("a$2", null, body("{}"), cache.stamp());
+        cache.get("a$1", null);
+        cache.put("a$3", null, body("{}"), cache.stamp());
+        assertNotNull(cache.get("a$1", null));
+        assertNull(cache.get("a$2", null));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void evictsByBytes() {
+        ObjectCache cache = new ObjectCache(100);
+        cache.setMaxBytes(10L);
+        cache.put("a$1", null, body("{\"a\":1}"), cache.stamp());
+        cache.put("a$2", null, body("{\"a\":2}"), cache.stamp());
+        assertNull(cache.get("a$1", null));
+        assertEquals(7, cache.getBytes());
+    }
+
+    @Test
+    void expiresByTtl() {
+        long[] clock = {0};
+        ObjectCache cache = new ObjectCache(10) {
+            @Override
+            protected long now() {
+                return clock[0];
+            }
+        };
+        cache.setTtl(Duration.ofSeconds(1));
+        cache.put(UUID, null, body("{}"), cache.stamp());
+        clock[0] = Duration.ofMillis(999).toNanos();
+        assertNotNull(cache.get(UUID, null));
+        clock[0] = Duration.ofSeconds(1).toNanos();
+        assertNull(cache.get(UUID, null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidateDropsAllAttrsAndStaleResponses() {
+        ObjectCache cache = new ObjectCache(10);
+        cache.put(UUID, null, body("{}"), cache.stamp());
+        cache.put(UUID, List.of("title"), body("{}"), cache.stamp());
+        long stamp = cache.stamp();
+        cache.invalidate(UUID);
+        assertEquals(0, cache.size());
+        cache.put(UUID, null, body("{}"), stamp);
+        assertNull(cache.get(UUID, null));
+    }
+}
@@ -0,0 +1,136 @@
+package nsmp_basic_api_connector;
+
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.exception.BulkheadFullException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.Admission;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.Bulkheads;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.CancellationToken;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.OperationClass;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.Priority;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.PriorityScheduler;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.RequestContext;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrioritySchedulerTests {
+
+    private static List<Priority> grantOrder(PriorityScheduler scheduler, Priority... priorities) throws Exception {
+        List<Priority> order = new CopyOnWriteArrayList<>();
+        scheduler.acquire("get");
+        Thread[] threads = new Thread[priorities.length];
+        for (int i = 0; i < priorities.length; i++) {
+            Priority priority = priorities[i];
+            threads[i] = new Thread(() -> RequestContext.current().withPriority(priority).run(() -> {
+                order.add(scheduler.acquire("get"));
+                scheduler.release();
+            }));
+            threads[i].start();
+            while (scheduler.getQueued() < i + 1) Thread.sleep(1);
+        }
+        scheduler.release();
+        for (Thread thread : threads) thread.join(5000);
+        return order;
+    }
+
+    @Test
+    void higherPriorityIsServedFirst() throws Exception {
+        PriorityScheduler scheduler = new PriorityScheduler(1, Duration.ofSeconds(10));
+        List<Priority> order = grantOrder(scheduler, Priority.LOW, Priority.NORMAL, Priority.HIGH);
+        assertEquals(List.of(Priority.HIGH, Priority.NORMAL, Priority.LOW), order);
+        assertEquals(1, scheduler.getRequests(Priority.LOW));
+        assertTrue(scheduler.getMaxWait(Priority.LOW).compareTo(scheduler.getMaxWait(Priority.HIGH)) >= 0);
+    }
+
+    @Test
+    void agingPreventsStarvation() throws Exception {
+        PriorityScheduler scheduler = new PriorityScheduler(1, Duration.ofNanos(1));
+        List<Priority> order = grantOrder(scheduler, Priority.LOW, Priority.HIGH);
+        assertEquals(List.of(Priority.LOW, Priority.HIGH), order);
+    }
+
+    @Test
+    void contextIsRestoredAfterCall() {
+        Priority inside = RequestContext.current().withPriority(Priority.LOW).call(() -> RequestContext.current().getPriority());
+        assertEquals(Priority.LOW, inside);
+        assertSame(RequestContext.DEFAULT, RequestContext.current());
+    }
+
+    @Test
+    void queuedRequestFailsAtDeadline() {
+        PriorityScheduler scheduler = new PriorityScheduler(1, Duration.ofSeconds(10));
+        scheduler.acquire("get");
+        RequestContext context = RequestContext.current().withTimeout(Duration.ofMillis(50));
+        assertThrows(DeadlineExceededException.class, () -> context.run(() -> scheduler.acquire("find")));
+        assertEquals(0, scheduler.getQueued());
+        assertTrue(context.isExpired());
+        assertThrows(DeadlineExceededException.class, () -> context.checkDeadline("find"));
+    }
+
+    @Test
+    void nestedTimeoutCannotExtendOuterDeadline() {
+        RequestContext outer = RequestContext.current().withTimeout(Duration.ofSeconds(1));
+        RequestContext inner = outer.withTimeout(Duration.ofHours(1));
+        assertTrue(inner.getRemaining().compareTo(Duration.ofSeconds(1)) <= 0);
+        assertFalse(inner.hasTimeFor(Duration.ofSeconds(2)));
+        assertNull(RequestContext.DEFAULT.getRemaining());
+    }
+
+    @Test
+    void cancelledRequestLeavesQueue() throws Exception {
+        PriorityScheduler scheduler = new PriorityScheduler(1, Duration.ofSeconds(10));
+        scheduler.acquire("get");
+        CancellationToken token = new CancellationToken();
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                RequestContext.current().withCancellation(token).run(() -> scheduler.acquire("find"));
+                failure.complete(null);
+            } catch (Throwable e) {
+                failure.complete(e);
+            }
+        });
+        waiter.start();
+        while (scheduler.getQueued() < 1) Thread.sleep(1);
+        token.cancel();
+        assertTrue(failure.get(5, TimeUnit.SECONDS) instanceof RequestCancelledException);
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    @Test
+    void requestOfFullClassDoesNotHoldBackOtherClasses() throws Exception {
+        PriorityScheduler scheduler = new PriorityScheduler(4, Duration.ofSeconds(10));
+        Bulkheads bulkheads = Bulkheads.builder().quota(OperationClass.ADMIN, 1).build();
+        Admission running = new Admission("metainfo", bulkheads, null);
+        scheduler.acquire("metainfo", running);
+        CompletableFuture<Priority> admin = CompletableFuture.supplyAsync(() -> RequestContext.current()
+                .withPriority(Priority.HIGH)
+                .call(() -> scheduler.acquire("scripts", new Admission("scripts", bulkheads, null))));
+        while (scheduler.getQueued() < 1) Thread.sleep(1);
+        Priority interactive = RequestContext.current().withPriority(Priority.LOW)
+                .call(() -> scheduler.acquire("get", new Admission("get", bulkheads, null)));
+        assertEquals(Priority.LOW, interactive);
+        assertFalse(admin.isDone());
+        running.onSuccess();
+        scheduler.release();
+        assertEquals(Priority.HIGH, admin.get(5, TimeUnit.SECONDS));
+        assertEquals(1, bulkheads.getInFlight(OperationClass.ADMIN));
+    }
+
+    @Test
+    void waitForClassQuotaIsLimitedByItsMaxWait() {
+        PriorityScheduler scheduler = new PriorityScheduler(4, Duration.ofSeconds(10));
+        Bulkheads bulkheads = Bulkheads.builder().quota(OperationClass.ADMIN, 1).maxWait(Duration.ofMillis(50)).build();
+        scheduler.acquire("metainfo", new Admission("metainfo", bulkheads, null));
+        assertThrows(BulkheadFullException.class, () -> scheduler.acquire("scripts", new Admission("scripts", bulkheads, null)));
+        assertEquals(1, bulkheads.getRejected(OperationClass.ADMIN));
+        assertEquals(0, scheduler.getQueued());
+    }
+}
@@ -0,0 +1,132 @@
+package nsmp_basic_api_connector;
+
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.cache.RequestCoalescer;
+import ru.kazantsev.nsmp.basic_api_connector.exception.DeadlineExceededException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestCancelledException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.CancellationToken;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.RequestContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTests {
+
+    private static final int THREADS = 8;
+
+    @Test
+    void concurrentCallsShareOneRequest() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> coalescer.execute("get", "get serviceCall$501", () -> {
+                    requests.incrementAndGet();
+                    awaitQuietly(release);
+                    return "result";
+                })));
+            }
+            while (coalescer.getCoalesced() + coalescer.getExecuted() < THREADS) Thread.sleep(5);
+            release.countDown();
+            for (Future<String> result : results) assertEquals("result", result.get(5, TimeUnit.SECONDS));
+            assertEquals(1, requests.get());
+            assertEquals(0, coalescer.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void errorIsSharedAndNotRemembered() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        assertThrows(RequestProcessException.class, () -> coalescer.execute("find", "find", () -> {
+            throw new RequestProcessException(new RuntimeException("down"));
+        }));
+        assertEquals("ok", coalescer.execute("find", "find", () -> "ok"));
+    }
+
+    @Test
+    void followerRetriesWhenLeaderIsCancelled() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger requests = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> coalescer.execute("get", "get serviceCall$501", () -> {
+                requests.incrementAndGet();
+                started.countDown();
+                awaitQuietly(release);
+                throw new RequestCancelledException();
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> follower = executor.submit(() -> coalescer.execute("get", "get serviceCall$501", () -> {
+                requests.incrementAndGet();
+                return "result";
+            }));
+            while (coalescer.getCoalesced() < 1) Thread.sleep(5);
+            release.countDown();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof RequestCancelledException);
+            assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+            assertEquals(2, requests.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void followerStopsWaitingOnOwnCancellationAndDeadline() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> coalescer.execute("metainfo", "metainfo https://localhost?accessKey=secret", () -> {
+                started.countDown();
+                awaitQuietly(release);
+                return "result";
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CancellationToken token = new CancellationToken();
+            Future<String> follower = executor.submit(() -> RequestContext.current().withCancellation(token)
+                    .call(() -> coalescer.execute("metainfo", "metainfo https://localhost?accessKey=secret", () -> "own")));
+            while (coalescer.getCoalesced() < 1) Thread.sleep(5);
+            token.cancel();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof RequestCancelledException);
+            DeadlineExceededException expired = assertThrows(DeadlineExceededException.class, () -> RequestContext.current()
+                    .withTimeout(Duration.ofMillis(50))
+                    .call(() -> coalescer.execute("metainfo", "metainfo https://localhost?accessKey=secret", () -> "own")));
+            assertFalse(expired.getMessage().contains("accessKey"));
+            release.countDown();
+            assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
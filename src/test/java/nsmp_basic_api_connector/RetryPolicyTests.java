@@ -0,0 +1,72 @@
+package nsmp_basic_api_connector;
+
+import org.apache.hc.core5.http.NoHttpResponseException;
+import org.junit.jupiter.api.Test;
+import ru.kazantsev.nsmp.basic_api_connector.exception.RequestProcessException;
+import ru.kazantsev.nsmp.basic_api_connector.exception.ResponseReadException;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.RequestContext;
+import ru.kazantsev.nsmp.basic_api_connector.resilience.RetryPolicy;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTests {
+
+    private static final RequestProcessException NO_RESPONSE = new RequestProcessException(new NoHttpResponseException());
+
+    @Test
+    void backoffGrowsUpToMaxDelay() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .delay(Duration.ofMillis(100), Duration.ofMillis(500))
+                .jitter(0)
+                .build();
+        assertEquals(Duration.ofMillis(100), policy.backoff(1));
+        assertEquals(Duration.ofMillis(200), policy.backoff(2));
+        assertEquals(Duration.ofMillis(400), policy.backoff(3));
+        assertEquals(Duration.ofMillis(500), policy.backoff(4));
+    }
+
+    @Test
+    void onlyIdempotentOperationsAreRetriedByDefault() {
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(3).build();
+        assertNotNull(policy.retryDelay("get", true, 1, NO_RESPONSE));
+        assertNull(policy.retryDelay("edit", true, 1, NO_RESPONSE));
+        assertNull(policy.retryDelay("get", true, 3, NO_RESPONSE));
+        assertNull(policy.retryDelay("find", false, 1, NO_RESPONSE));
+
+        RetryPolicy writes = RetryPolicy.builder().retryNonIdempotent(true).build();
+        assertNotNull(writes.retryDelay("edit", true, 1, NO_RESPONSE));
+    }
+
+    @Test
+    void onlyTransportFailuresAreRetryable() {
+        RetryPolicy policy = RetryPolicy.builder().build();
+        assertTrue(policy.isRetryable(new RequestProcessException(new SocketException("Connection reset"))));
+        assertFalse(policy.isRetryable(new RequestProcessException(new IOException("other"))));
+        assertFalse(policy.isRetryable(new ResponseReadException(new SocketException("Connection reset"))));
+    }
+
+    @Test
+    void budgetLimitsRetriesAndRefillsOnSuccess() {
+        RetryPolicy policy = RetryPolicy.builder().budget(2, 0.5).build();
+        assertNotNull(policy.retryDelay("get", true, 1, NO_RESPONSE));
+        assertNotNull(policy.retryDelay("get", true, 1, NO_RESPONSE));
+        assertNull(policy.retryDelay("get", true, 1, NO_RESPONSE));
+        policy.onSuccess();
+        policy.onSuccess();
+        assertNotNull(policy.retryDelay("get", true, 1, NO_RESPONSE));
+    }
+
+    @Test
+    void retryPastDeadlineDoesNotSpendBudget() {
+        RetryPolicy policy = RetryPolicy.builder().delay(Duration.ofSeconds(1), Duration.ofSeconds(1)).jitter(0).budget(1, 0).build();
+        RequestContext expiring = RequestContext.DEFAULT.withTimeout(Duration.ofMillis(100));
+        assertNull(policy.retryDelay("get", true, 1, NO_RESPONSE, expiring));
+        assertEquals(1.0, policy.getBudget());
+        assertEquals(Duration.ofSeconds(1), policy.retryDelay("get", true, 1, NO_RESPONSE, RequestContext.DEFAULT));
+        assertEquals(0.0, policy.getBudget());
+    }
+}
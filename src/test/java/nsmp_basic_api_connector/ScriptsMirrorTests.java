@@ -0,0 +1,54 @@
+package nsmp_basic_api_connector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.kazantsev.nsmp.basic_api_connector.scripts.ScriptsMirror;
+import ru.kazantsev.nsmp.basic_api_connector.scripts.ScriptsSyncResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static nsmp_basic_api_connector.TestUtils.resourceFile;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptsMirrorTests {
+
+    private static final String ARCHIVE = "test/src.zip";
+    private static final String SCRIPT = "src/main/groovy/ru/naumen/scripts/test1.groovy";
+
+    private static ScriptsSyncResult sync(ScriptsMirror mirror) throws IOException {
+        try (InputStream archive = Files.newInputStream(resourceFile(ARCHIVE).toPath())) {
+            return mirror.sync(archive);
+        }
+    }
+
+    @Test
+    void firstSyncExtractsEverything(@TempDir Path directory) throws IOException {
+        ScriptsSyncResult result = sync(new ScriptsMirror(directory));
+        assertEquals(3, result.added.size());
+        assertTrue(Files.isRegularFile(directory.resolve(SCRIPT)));
+        assertTrue(Files.isRegularFile(directory.resolve(ScriptsMirror.MANIFEST_FILE_NAME)));
+    }
+
+    @Test
+    void secondSyncSkipsUnchanged(@TempDir Path directory) throws IOException {
+        ScriptsMirror mirror = new ScriptsMirror(directory);
+        sync(mirror);
+        ScriptsSyncResult result = sync(mirror);
+        assertFalse(result.hasChanges());
+        assertEquals(3, result.unchanged.size());
+    }
+
+    @Test
+    void locallyModifiedFileIsRestored(@TempDir Path directory) throws IOException {
+        ScriptsMirror mirror = new ScriptsMirror(directory);
+        sync(mirror);
+        String original = Files.readString(directory.resolve(SCRIPT));
+        Files.writeString(directory.resolve(SCRIPT), "changed locally");
+        ScriptsSyncResult result = sync(mirror);
+        assertEquals(1, result.updated.size());
+        assertEquals(original, Files.readString(directory.resolve(SCRIPT)));
+    }
+}